@@ -15,15 +15,15 @@ import java.util.Optional;
 @EnableJpaAuditing
 public class AuditingConfig {
     @Bean
-    public AuditorAware<String> auditorProvider(){
+    public AuditorAware<Long> auditorProvider(){
         return new SpringSecurityAuditAwareImpl();
     }
 }
 
-class SpringSecurityAuditAwareImpl implements AuditorAware<String>{
+class SpringSecurityAuditAwareImpl implements AuditorAware<Long>{
 
     @Override
-    public Optional<String> getCurrentAuditor() {
+    public Optional<Long> getCurrentAuditor() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         if(authentication==null || !authentication.isAuthenticated() || authentication instanceof AnonymousAuthenticationToken){
             return Optional.empty();
@@ -0,0 +1,66 @@
+package francislagueu.task.config;
+
+import francislagueu.task.repositories.VoteRepository;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry){
+        return new TimedAspect(meterRegistry);
+    }
+
+    // Times every VoteRepository method as repository.invocations, tagged with the method name. The advice goes
+    // first: Spring Data's query interceptors end the chain without proceeding
+    @Bean
+    public static BeanPostProcessor repositoryMetricsPostProcessor(ObjectProvider<MeterRegistry> meterRegistry){
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName){
+                if(bean instanceof VoteRepository && bean instanceof Advised){
+                    ((Advised) bean).addAdvice(0, new RepositoryTimingInterceptor(VoteRepository.class.getSimpleName(), meterRegistry));
+                }
+                return bean;
+            }
+        };
+    }
+
+    private static class RepositoryTimingInterceptor implements MethodInterceptor {
+        private final String repository;
+        private final ObjectProvider<MeterRegistry> meterRegistry;
+        private final Map<Method, Timer> timers = new ConcurrentHashMap<>();
+
+        RepositoryTimingInterceptor(String repository, ObjectProvider<MeterRegistry> meterRegistry) {
+            this.repository = repository;
+            this.meterRegistry = meterRegistry;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Timer timer = timers.computeIfAbsent(invocation.getMethod(), method -> Timer.builder("repository.invocations")
+                    .tags("repository", repository, "method", method.getName())
+                    .register(meterRegistry.getObject()));
+            long start = System.nanoTime();
+            try{
+                return invocation.proceed();
+            }finally {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
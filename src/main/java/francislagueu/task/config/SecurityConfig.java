@@ -3,6 +3,8 @@ package francislagueu.task.config;
 import francislagueu.task.security.CustomUserDetailsService;
 import francislagueu.task.security.JwtAuthenticationEntryPoint;
 import francislagueu.task.security.JwtAuthenticationFilter;
+import francislagueu.task.security.TimedPasswordEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -35,6 +37,9 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
     @Autowired
     private JwtAuthenticationEntryPoint unauthorizedHandler;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Bean
     public JwtAuthenticationFilter jwtAuthenticationFilter(){
         return new JwtAuthenticationFilter();
@@ -47,7 +52,7 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
 
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new TimedPasswordEncoder(new BCryptPasswordEncoder(), meterRegistry);
     }
 
     @Bean(BeanIds.AUTHENTICATION_MANAGER)
@@ -82,10 +87,13 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .antMatchers("/api/auth/**")
                 .permitAll()
                 .antMatchers("/api/user/checkUsernameAvailability",
-                        "/api/user/checkEmailAvailability")
+                        "/api/user/checkEmailAvailability",
+                        "/api/user/emailAvailability")
                 .permitAll()
                 .antMatchers(HttpMethod.GET, "/api/polls/**", "/api/users/**")
                 .permitAll()
+                .antMatchers("/actuator/metrics/**", "/actuator/prometheus")
+                .hasRole("ADMIN")
                 .anyRequest()
                 .authenticated();
         http.addFilterBefore( jwtAuthenticationFilter(), UsernamePasswordAuthenticationFilter.class);
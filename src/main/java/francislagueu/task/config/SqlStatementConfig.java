@@ -0,0 +1,39 @@
+package francislagueu.task.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import francislagueu.task.util.StatementCountingDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.util.StringUtils;
+
+@Configuration
+public class SqlStatementConfig {
+
+    // Built the way Boot builds its Hikari pool, which backs off when a DataSource bean is defined
+    @Bean
+    @ConfigurationProperties(prefix = "spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties properties){
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(StatementCountingDataSource.class).build();
+        if(StringUtils.hasText(properties.getName())){
+            dataSource.setPoolName(properties.getName());
+        }
+        return dataSource;
+    }
+
+    @Bean
+    public SqlStatementFilter sqlStatementFilter(){
+        return new SqlStatementFilter();
+    }
+
+    // Outside Spring Security's filters, so loading the principal counts towards the request
+    @Bean
+    public FilterRegistrationBean<SqlStatementFilter> sqlStatementFilterRegistration(SqlStatementFilter sqlStatementFilter){
+        FilterRegistrationBean<SqlStatementFilter> registration = new FilterRegistrationBean<>(sqlStatementFilter);
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
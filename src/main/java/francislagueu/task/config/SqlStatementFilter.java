@@ -0,0 +1,63 @@
+package francislagueu.task.config;
+
+import francislagueu.task.util.SqlStatementStats;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the JDBC statements each request runs on its own thread, and the time spent in them. The counts go
+ * out as the http.server.requests.sql.statements and http.server.requests.sql.time metrics, tagged like
+ * http.server.requests, and, when app.sqlStatementHeaders is set, as response headers (see
+ * SqlStatementHeaderAdvice). Requests that go asynchronous, login and register among them, run most of their
+ * statements on other threads and are left out of the metrics.
+ */
+public class SqlStatementFilter extends OncePerRequestFilter {
+
+    public static final String STATS_ATTRIBUTE = SqlStatementFilter.class.getName() + ".stats";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.sqlStatementMetrics}")
+    private boolean metrics;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        SqlStatementStats stats = SqlStatementStats.begin();
+        request.setAttribute(STATS_ATTRIBUTE, stats);
+        try{
+            filterChain.doFilter(request, response);
+        }finally {
+            SqlStatementStats.end();
+            if(metrics && !request.isAsyncStarted()){
+                record(request, stats);
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, SqlStatementStats stats){
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+        DistributionSummary.builder("http.server.requests.sql.statements")
+                .tags("method", request.getMethod(), "uri", uri)
+                .register(meterRegistry)
+                .record(stats.getStatements());
+        Timer.builder("http.server.requests.sql.time")
+                .tags("method", request.getMethod(), "uri", uri)
+                .register(meterRegistry)
+                .record(stats.getNanos(), TimeUnit.NANOSECONDS);
+    }
+}
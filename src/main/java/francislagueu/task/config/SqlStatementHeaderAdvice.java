@@ -0,0 +1,42 @@
+package francislagueu.task.config;
+
+import francislagueu.task.util.SqlStatementStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import java.util.Locale;
+
+/**
+ * Adds the statement count and JDBC time counted by SqlStatementFilter so far to response bodies written by
+ * message converters, as X-SQL-Statements and X-SQL-Time (milliseconds). For development: enable with
+ * app.sqlStatementHeaders.
+ */
+@ControllerAdvice
+public class SqlStatementHeaderAdvice implements ResponseBodyAdvice<Object> {
+
+    @Value("${app.sqlStatementHeaders}")
+    private boolean enabled;
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return enabled;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        SqlStatementStats stats = SqlStatementStats.current();
+        if(stats != null){
+            response.getHeaders().set("X-SQL-Statements", Integer.toString(stats.getStatements()));
+            response.getHeaders().set("X-SQL-Time", String.format(Locale.ROOT, "%.3f", stats.getNanos() / 1e6));
+        }
+        return body;
+    }
+}
@@ -1,36 +1,55 @@
 package francislagueu.task.controllers;
 
+import francislagueu.task.config.CurrentUser;
 import francislagueu.task.exception.AppException;
+import francislagueu.task.exception.ResourceNotFoundException;
 import francislagueu.task.models.Role;
 import francislagueu.task.models.RoleName;
 import francislagueu.task.models.User;
+import francislagueu.task.models.UserStats;
 import francislagueu.task.payload.ApiResponse;
 import francislagueu.task.payload.AuthenticationResponse;
 import francislagueu.task.payload.Login;
 import francislagueu.task.payload.Register;
 import francislagueu.task.repositories.RoleRepository;
 import francislagueu.task.repositories.UserRepository;
+import francislagueu.task.repositories.UserStatsRepository;
+import francislagueu.task.security.CustomUserDetailsService;
 import francislagueu.task.security.JwtTokenProvider;
+import francislagueu.task.security.PasswordHashingExecutor;
+import francislagueu.task.security.UserPrincipal;
+import francislagueu.task.services.UserIdentityFilter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.authentication.AccountStatusUserDetailsChecker;
+import org.springframework.security.authentication.AuthenticationEventPublisher;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetailsChecker;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import javax.annotation.PostConstruct;
 import javax.validation.Valid;
 import java.net.URI;
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 @RestController
 @RequestMapping("/api/auth")
 public class AuthController {
     @Autowired
-    AuthenticationManager authenticationManager;
+    CustomUserDetailsService customUserDetailsService;
     @Autowired
     UserRepository userRepository;
     @Autowired
@@ -39,40 +58,104 @@ public class AuthController {
     PasswordEncoder passwordEncoder;
     @Autowired
     JwtTokenProvider tokenProvider;
+    @Autowired
+    UserStatsRepository userStatsRepository;
+    @Autowired
+    UserIdentityFilter userIdentityFilter;
+    @Autowired
+    PasswordHashingExecutor passwordHashingExecutor;
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    Executor taskExecutor;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    AuthenticationEventPublisher authenticationEventPublisher;
+
+    private final UserDetailsChecker accountStatusChecker = new AccountStatusUserDetailsChecker();
+    private String userNotFoundPassword;
+    private TransactionTemplate transaction;
+
+    @PostConstruct
+    void init(){
+        userNotFoundPassword = passwordEncoder.encode("userNotFoundPassword");
+        transaction = new TransactionTemplate(transactionManager);
+    }
 
     @PostMapping("/login")
-    public ResponseEntity<?> authenticateUser(@Valid @RequestBody Login login){
-        Authentication authentication = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(
-                        login.getUsernameOrEmail(),
-                        login.getPassword()
-                )
-        );
-        SecurityContextHolder.getContext().setAuthentication(authentication);
-        String jwt = tokenProvider.generateToken(authentication);
-        return ResponseEntity.ok(new AuthenticationResponse(jwt));
+    public CompletableFuture<ResponseEntity<?>> authenticateUser(@Valid @RequestBody Login login){
+        // Only the password check runs on the hashing threads; unknown users are checked against a dummy hash
+        // so they take as long as a wrong password
+        UserPrincipal user = loadUser(login.getUsernameOrEmail());
+        String encodedPassword = user != null ? user.getPassword() : userNotFoundPassword;
+        return passwordHashingExecutor.submit(() -> passwordEncoder.matches(login.getPassword(), encodedPassword)).thenApply(matches -> {
+            // The same checks and events as DaoAuthenticationProvider, which would also load the user on these threads
+            try{
+                if(user == null || !matches){
+                    throw new BadCredentialsException("Bad credentials");
+                }
+                accountStatusChecker.check(user);
+            }catch (AuthenticationException ex){
+                authenticationEventPublisher.publishAuthenticationFailure(ex,
+                        new UsernamePasswordAuthenticationToken(login.getUsernameOrEmail(), null));
+                throw ex;
+            }
+            authenticationEventPublisher.publishAuthenticationSuccess(
+                    new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+            return ResponseEntity.ok(new AuthenticationResponse(tokenProvider.generateToken(user)));
+        });
+    }
+
+    @PostMapping("/refresh")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<?> refreshToken(@CurrentUser UserPrincipal currentUser){
+        User user = userRepository.findWithRolesByUuid(currentUser.getUuid())
+                .orElseThrow(()-> new ResourceNotFoundException("User", "id", currentUser.getUuid()));
+        return ResponseEntity.ok(new AuthenticationResponse(tokenProvider.generateToken(UserPrincipal.create(user))));
     }
 
     @PostMapping("/register")
-    public ResponseEntity<?> registerUser(@Valid @RequestBody Register register){
+    public CompletableFuture<ResponseEntity<?>> registerUser(@Valid @RequestBody Register register){
         if(userRepository.existsByUsername(register.getUsername()))
-            return new ResponseEntity(new ApiResponse(false, "Username is already taken"), HttpStatus.BAD_REQUEST);
+            return CompletableFuture.completedFuture(new ResponseEntity(new ApiResponse(false, "Username is already taken"), HttpStatus.BAD_REQUEST));
         if(userRepository.existsByEmail(register.getEmail()))
-            return new ResponseEntity(new ApiResponse(false, "Email address already in use!"), HttpStatus.BAD_REQUEST);
+            return CompletableFuture.completedFuture(new ResponseEntity(new ApiResponse(false, "Email address already in use!"), HttpStatus.BAD_REQUEST));
 
         User user = new User(register.getFirstName(), register.getLastName(), register.getEmail(), register.getPassword(), register.getUsername());
-        user.setPassword(passwordEncoder.encode(user.getPassword()));
 
         Role userRole = roleRepository.findByName(RoleName.ROLE_USER).orElseThrow(()-> new AppException("User Role not set."));
 
         user.setRoles(Collections.singleton(userRole));
 
-        User result = userRepository.save(user);
-
         URI location = ServletUriComponentsBuilder
                 .fromCurrentContextPath().path("/api/users/{username}")
-                .buildAndExpand(result.getUsername()).toUri();
-        return ResponseEntity.created(location).body(new ApiResponse(true, "User registered successfully"));
+                .buildAndExpand(user.getUsername()).toUri();
+        return passwordHashingExecutor.submit(() -> passwordEncoder.encode(user.getPassword())).thenApplyAsync(password -> {
+            user.setPassword(password);
+            User result;
+            try{
+                result = transaction.execute(status -> {
+                    User saved = userRepository.save(user);
+                    userStatsRepository.save(new UserStats(saved.getId()));
+                    return saved;
+                });
+            }catch (DataIntegrityViolationException ex){
+                // Another registration took the username or email while the password was hashing
+                if(userRepository.existsByUsername(user.getUsername()))
+                    return new ResponseEntity(new ApiResponse(false, "Username is already taken"), HttpStatus.BAD_REQUEST);
+                return new ResponseEntity(new ApiResponse(false, "Email address already in use!"), HttpStatus.BAD_REQUEST);
+            }
+            userIdentityFilter.recordRegistration(result.getUsername(), result.getEmail());
+            return ResponseEntity.created(location).body(new ApiResponse(true, "User registered successfully"));
+        }, taskExecutor);
+    }
+
+    private UserPrincipal loadUser(String usernameOrEmail){
+        try{
+            return (UserPrincipal) customUserDetailsService.loadUserByUsername(usernameOrEmail);
+        }catch (UsernameNotFoundException ex){
+            return null;
+        }
     }
 
 }
@@ -7,14 +7,23 @@ import francislagueu.task.repositories.PollRepository;
 import francislagueu.task.repositories.UserRepository;
 import francislagueu.task.repositories.VoteRepository;
 import francislagueu.task.security.UserPrincipal;
+import francislagueu.task.services.ExpiredPollCache;
 import francislagueu.task.services.PollService;
+import francislagueu.task.services.PollTallyBroadcaster;
+import francislagueu.task.services.PollVersions;
+import francislagueu.task.services.VoteIngestionService;
 import francislagueu.task.util.AppConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import javax.validation.Valid;
@@ -36,13 +45,43 @@ public class PollController {
     @Autowired
     private PollService pollService;
 
+    @Autowired
+    private VoteIngestionService voteIngestionService;
+
+    @Autowired
+    private PollTallyBroadcaster pollTallyBroadcaster;
+
+    @Autowired
+    private ExpiredPollCache expiredPollCache;
+
+    @Autowired
+    private PollVersions pollVersions;
+
+    // Responses differ per viewer, and clients must revalidate them with their ETag
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
     private  static final Logger logger = LoggerFactory.getLogger(PollController.class);
 
     @GetMapping
-    public PagedResponse<PollResponse> getPolls(@CurrentUser UserPrincipal currentUser,
-                                                @RequestParam(value = "page", defaultValue = AppConstants.DEFAULT_PAGE_NUMBER) int page,
-                                                @RequestParam(value = "size", defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size){
-        return pollService.getAllPolls(currentUser, page,size);
+    public ResponseEntity<PagedResponse<PollResponse>> getPolls(@CurrentUser UserPrincipal currentUser,
+                                                                @RequestParam(value = "page", defaultValue = AppConstants.DEFAULT_PAGE_NUMBER) int page,
+                                                                @RequestParam(value = "size", defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size,
+                                                                WebRequest webRequest){
+        if(webRequest.checkNotModified(pollVersions.getFeedETag(getViewerId(currentUser)))){
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(REVALIDATE).body(pollService.getAllPolls(currentUser, page,size));
+    }
+
+    @GetMapping(params = "after")
+    public ResponseEntity<CursorPagedResponse<PollResponse>> getPolls(@CurrentUser UserPrincipal currentUser,
+                                                                      @RequestParam(value = "after") String after,
+                                                                      @RequestParam(value = "size", defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size,
+                                                                      WebRequest webRequest){
+        if(webRequest.checkNotModified(pollVersions.getFeedETag(getViewerId(currentUser)))){
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(REVALIDATE).body(pollService.getAllPolls(currentUser, after, size));
     }
 
     @PostMapping
@@ -56,13 +95,53 @@ public class PollController {
     }
 
     @GetMapping("/{pollId}")
-    public PollResponse getPollById(@CurrentUser UserPrincipal currentUser, @PathVariable Long pollId){
-        return pollService.getPollById(pollId, currentUser);
+    public ResponseEntity<?> getPollById(@CurrentUser UserPrincipal currentUser, @PathVariable Long pollId,
+                                         @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, defaultValue = "") String acceptEncoding,
+                                         WebRequest webRequest){
+        boolean acceptsGzip = acceptEncoding.contains("gzip");
+        if(webRequest.checkNotModified(pollVersions.getPollETag(pollId, getViewerId(currentUser), acceptsGzip))){
+            return null;
+        }
+
+        ExpiredPollCache.FrozenPoll frozenPoll = expiredPollCache.get(pollId);
+        if(frozenPoll == null){
+            return ResponseEntity.ok().cacheControl(REVALIDATE).body(pollService.getPollById(pollId, currentUser));
+        }
+
+        Long selectedChoice = currentUser != null ? expiredPollCache.getSelectedChoice(pollId, currentUser.getId()) : null;
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .cacheControl(REVALIDATE)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if(selectedChoice == null && frozenPoll.getGzip() != null && acceptsGzip){
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(frozenPoll.getGzip());
+        }
+        return response.body(frozenPoll.render(selectedChoice));
+    }
+
+    @GetMapping(value = "/{pollId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamPollTally(@PathVariable Long pollId){
+        return pollTallyBroadcaster.subscribe(pollId);
     }
 
     @PostMapping("/{pollId}/votes")
     @PreAuthorize("hasRole('USER')")
-    public PollResponse castVote(@CurrentUser UserPrincipal currentUser, @PathVariable Long pollId, @Valid @RequestBody VoteRequest voteRequest){
-        return pollService.castVoteAndGetUpdatedPoll(pollId, voteRequest, currentUser);
+    public ResponseEntity<?> castVote(@CurrentUser UserPrincipal currentUser, @PathVariable Long pollId, @Valid @RequestBody VoteRequest voteRequest){
+        if(voteIngestionService.isEnabled()){
+            VoteReceipt receipt = pollService.submitVote(pollId, voteRequest, currentUser);
+            URI location = ServletUriComponentsBuilder.fromCurrentRequest().path("/{ticket}")
+                    .buildAndExpand(receipt.getTicket()).toUri();
+            return ResponseEntity.accepted().location(location).body(receipt);
+        }
+        return ResponseEntity.ok(pollService.castVoteAndGetUpdatedPoll(pollId, voteRequest, currentUser));
+    }
+
+    @GetMapping("/{pollId}/votes/{ticket}")
+    public VoteReceipt getVoteReceipt(@PathVariable Long pollId, @PathVariable String ticket){
+        return pollService.getVoteReceipt(pollId, ticket);
+    }
+
+    private static Long getViewerId(UserPrincipal currentUser){
+        return currentUser != null ? currentUser.getId() : null;
     }
 }
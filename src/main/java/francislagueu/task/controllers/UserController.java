@@ -9,6 +9,7 @@ import francislagueu.task.repositories.UserRepository;
 import francislagueu.task.repositories.VoteRepository;
 import francislagueu.task.security.UserPrincipal;
 import francislagueu.task.services.PollService;
+import francislagueu.task.services.UserIdentityFilter;
 import francislagueu.task.util.AppConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,36 +33,44 @@ public class UserController {
     @Autowired
     private PollService pollService;
 
+    @Autowired
+    private UserIdentityFilter userIdentityFilter;
+
     private  static final Logger logger = LoggerFactory.getLogger(UserController.class);
 
     @GetMapping("/user/me")
     @PreAuthorize("hasRole('USER')")
     public UserSummary getCurrentUser(@CurrentUser UserPrincipal currrentUser){
-        return new UserSummary(currrentUser.getId(), currrentUser.getUsername(), currrentUser.getFirstName(),currrentUser.getLastName());
+        return new UserSummary(currrentUser.getUuid(), currrentUser.getUsername(), currrentUser.getFirstName(),currrentUser.getLastName());
     }
 
     @GetMapping("/user/checkUsernameAvailability")
     public UserIdentityAvailability checkUsernameAvailability(@RequestParam(value = "username") String username){
-        Boolean isAvailable = !userRepository.existsByUsername(username);
+        Boolean isAvailable = !userIdentityFilter.usernameExists(username);
         return new UserIdentityAvailability(isAvailable);
     }
     @GetMapping("/user/emailAvailability")
     public UserIdentityAvailability checkEmailAvailability(@RequestParam(value = "email") String email){
-        Boolean isAvailable = !userRepository.existsByEmail(email);
+        Boolean isAvailable = !userIdentityFilter.emailExists(email);
         return new UserIdentityAvailability(isAvailable);
     }
 
     @GetMapping("/users/{username}")
     public UserProfile getUserProfile(@PathVariable(value = "username") String username){
-        User user = userRepository.findByUsername(username)
+        UserProfile userProfile = userRepository.findProfileByUsername(username)
                 .orElseThrow(()-> new ResourceNotFoundException("User", "username", username));
-        long pollCount = pollRepository.countByCreatedBy(user.getId());
-        long voteCount = voteRepository.countByUserId(user.getId());
-
-        return new UserProfile(user.getId(), user.getUsername(), user.getFirstName(), user.getLastName(), user.getCreatedAt(), pollCount, voteCount);
+        if(userProfile.getPollCount() == null){
+            // No user_stats row until the backfill reaches this user
+            User user = userRepository.findByUsername(username)
+                    .orElseThrow(()-> new ResourceNotFoundException("User", "username", username));
+            userProfile.setPollCount(pollRepository.countByCreatedBy(user.getId()));
+            userProfile.setVoteCount(voteRepository.countByUserId(user.getId()));
+            userProfile.setVotesReceived(voteRepository.countByPollCreatedBy(user.getId()));
+        }
+        return userProfile;
     }
 
-    @GetMapping("/users/{Username}/polls")
+    @GetMapping("/users/{username}/polls")
     public PagedResponse<PollResponse> getPollsCreatedBy(@PathVariable(value = "username") String username,
                                                          @CurrentUser UserPrincipal currentUser,
                                                          @RequestParam(value = "page", defaultValue = AppConstants.DEFAULT_PAGE_NUMBER)int page,
@@ -69,7 +78,15 @@ public class UserController {
         return pollService.getPollsCreatedBy(username, currentUser, page, size);
     }
 
-    @GetMapping("/users/{Username}/votes")
+    @GetMapping(value = "/users/{username}/polls", params = "after")
+    public CursorPagedResponse<PollResponse> getPollsCreatedBy(@PathVariable(value = "username") String username,
+                                                               @CurrentUser UserPrincipal currentUser,
+                                                               @RequestParam(value = "after") String after,
+                                                               @RequestParam(value = "size", defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size){
+        return pollService.getPollsCreatedBy(username, currentUser, after, size);
+    }
+
+    @GetMapping("/users/{username}/votes")
     public PagedResponse<PollResponse> getPollsVotedBy(@PathVariable(value = "username") String username,
                                                          @CurrentUser UserPrincipal currentUser,
                                                          @RequestParam(value = "page", defaultValue = AppConstants.DEFAULT_PAGE_NUMBER)int page,
@@ -77,5 +94,13 @@ public class UserController {
         return pollService.getPollsVotedBy(username, currentUser, page, size);
     }
 
+    @GetMapping(value = "/users/{username}/votes", params = "after")
+    public CursorPagedResponse<PollResponse> getPollsVotedBy(@PathVariable(value = "username") String username,
+                                                             @CurrentUser UserPrincipal currentUser,
+                                                             @RequestParam(value = "after") String after,
+                                                             @RequestParam(value = "size", defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size){
+        return pollService.getPollsVotedBy(username, currentUser, after, size);
+    }
+
 
 }
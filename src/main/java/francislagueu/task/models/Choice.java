@@ -10,7 +10,8 @@ import java.util.Objects;
 public class Choice {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "choice_seq")
+    @SequenceGenerator(name = "choice_seq", sequenceName = "choices_seq", allocationSize = 50)
     private Long id;
 
     @NotBlank
@@ -21,6 +22,9 @@ public class Choice {
     @JoinColumn(name = "poll_id", nullable = false)
     private Poll poll;
 
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private long voteCount;
+
     public Choice() {
     }
 
@@ -52,6 +56,14 @@ public class Choice {
         this.poll = poll;
     }
 
+    public long getVoteCount() {
+        return voteCount;
+    }
+
+    public void setVoteCount(long voteCount) {
+        this.voteCount = voteCount;
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(id);
@@ -0,0 +1,29 @@
+package francislagueu.task.models;
+
+public class ChoiceVoteCountCheck {
+    private Long choiceId;
+    private Long storedCount;
+    private Long actualCount;
+
+    public ChoiceVoteCountCheck(Long choiceId, Long storedCount, Long actualCount) {
+        this.choiceId = choiceId;
+        this.storedCount = storedCount;
+        this.actualCount = actualCount;
+    }
+
+    public Long getChoiceId() {
+        return choiceId;
+    }
+
+    public Long getStoredCount() {
+        return storedCount;
+    }
+
+    public Long getActualCount() {
+        return actualCount;
+    }
+
+    public long getDrift() {
+        return actualCount - storedCount;
+    }
+}
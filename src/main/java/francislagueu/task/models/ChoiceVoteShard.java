@@ -0,0 +1,75 @@
+package francislagueu.task.models;
+
+import javax.persistence.*;
+
+@Entity
+@Table(name = "choice_vote_shards", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"choice_id", "shard"})
+})
+public class ChoiceVoteShard {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "choice_vote_shard_seq")
+    @SequenceGenerator(name = "choice_vote_shard_seq", sequenceName = "choice_vote_shards_seq", allocationSize = 50)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "poll_id", nullable = false)
+    private Poll poll;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "choice_id", nullable = false)
+    private Choice choice;
+
+    private int shard;
+
+    private long voteCount;
+
+    public ChoiceVoteShard() {
+    }
+
+    public ChoiceVoteShard(Poll poll, Choice choice, int shard) {
+        this.poll = poll;
+        this.choice = choice;
+        this.shard = shard;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Poll getPoll() {
+        return poll;
+    }
+
+    public void setPoll(Poll poll) {
+        this.poll = poll;
+    }
+
+    public Choice getChoice() {
+        return choice;
+    }
+
+    public void setChoice(Choice choice) {
+        this.choice = choice;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public void setShard(int shard) {
+        this.shard = shard;
+    }
+
+    public long getVoteCount() {
+        return voteCount;
+    }
+
+    public void setVoteCount(long voteCount) {
+        this.voteCount = voteCount;
+    }
+}
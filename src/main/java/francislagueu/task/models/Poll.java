@@ -7,20 +7,44 @@ import org.hibernate.annotations.FetchMode;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "polls")
+@SqlResultSetMapping(name = Poll.FEED_ROW_MAPPING, classes = @ConstructorResult(targetClass = PollFeedRow.class, columns = {
+        @ColumnResult(name = "poll_id", type = Long.class),
+        @ColumnResult(name = "question", type = String.class),
+        @ColumnResult(name = "created_at", type = Instant.class),
+        @ColumnResult(name = "expiration_date_time", type = Instant.class),
+        @ColumnResult(name = "creator_uuid", type = String.class),
+        @ColumnResult(name = "creator_username", type = String.class),
+        @ColumnResult(name = "creator_first_name", type = String.class),
+        @ColumnResult(name = "creator_last_name", type = String.class),
+        @ColumnResult(name = "choice_id", type = Long.class),
+        @ColumnResult(name = "choice_text", type = String.class),
+        @ColumnResult(name = "vote_count", type = Long.class),
+        @ColumnResult(name = "selected_choice_id", type = Long.class),
+        @ColumnResult(name = "cursor_created_at", type = Instant.class),
+        @ColumnResult(name = "cursor_id", type = Long.class)
+}))
+@Table(name = "polls", indexes = {
+        @Index(name = "polls_created_at_id_idx", columnList = "createdAt, id"),
+        @Index(name = "polls_created_by_created_at_id_idx", columnList = "createdBy, createdAt, id"),
+        @Index(name = "polls_closed_expiration_date_time_idx", columnList = "closed, expirationDateTime")
+})
 public class Poll extends UserDateAudit {
+    public static final String FEED_ROW_MAPPING = "PollFeedRow";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "poll_seq")
+    @SequenceGenerator(name = "poll_seq", sequenceName = "polls_seq", allocationSize = 50)
     private Long id;
 
     @NotBlank
-    @Size(min = 150)
+    @Size(max = 150)
     private String question;
 
     @OneToMany(
@@ -34,9 +58,15 @@ public class Poll extends UserDateAudit {
     @BatchSize(size = 30)
     private List<Choice> choices = new ArrayList<>();
 
-    @NotBlank
+    @NotNull
     private Instant expirationDateTime;
 
+    @Column(nullable = false, columnDefinition = "integer default 0")
+    private int counterShards;
+
+    @Column(nullable = false, columnDefinition = "boolean default false")
+    private boolean closed;
+
     public Long getId() {
         return id;
     }
@@ -69,6 +99,26 @@ public class Poll extends UserDateAudit {
         this.expirationDateTime = expirationDateTime;
     }
 
+    public int getCounterShards() {
+        return counterShards;
+    }
+
+    public void setCounterShards(int counterShards) {
+        this.counterShards = counterShards;
+    }
+
+    public boolean isCounterSharded() {
+        return counterShards > 0;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public void setClosed(boolean closed) {
+        this.closed = closed;
+    }
+
     public void addChoice(Choice choice){
         choices.add(choice);
         choice.setPoll(this);
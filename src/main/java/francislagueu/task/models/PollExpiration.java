@@ -0,0 +1,29 @@
+package francislagueu.task.models;
+
+import java.time.Instant;
+
+public class PollExpiration {
+    private Long pollId;
+    private Instant expirationDateTime;
+
+    public PollExpiration(Long pollId, Instant expirationDateTime) {
+        this.pollId = pollId;
+        this.expirationDateTime = expirationDateTime;
+    }
+
+    public Long getPollId() {
+        return pollId;
+    }
+
+    public void setPollId(Long pollId) {
+        this.pollId = pollId;
+    }
+
+    public Instant getExpirationDateTime() {
+        return expirationDateTime;
+    }
+
+    public void setExpirationDateTime(Instant expirationDateTime) {
+        this.expirationDateTime = expirationDateTime;
+    }
+}
@@ -0,0 +1,101 @@
+package francislagueu.task.models;
+
+import java.time.Instant;
+
+/**
+ * One poll choice of a feed page, flattened together with its poll, the poll's creator, the choice's vote
+ * count and the choice the viewer picked in that poll, if any. The cursor fields hold the feed's sort key:
+ * the poll's own (createdAt, id), or the (createdAt, id) of the vote for feeds ordered by vote time.
+ */
+public class PollFeedRow {
+    private Long pollId;
+    private String question;
+    private Instant createdAt;
+    private Instant expirationDateTime;
+    private String creatorUuid;
+    private String creatorUsername;
+    private String creatorFirstName;
+    private String creatorLastName;
+    private Long choiceId;
+    private String choiceText;
+    private Long voteCount;
+    private Long selectedChoiceId;
+    private Instant cursorCreatedAt;
+    private Long cursorId;
+
+    public PollFeedRow(Long pollId, String question, Instant createdAt, Instant expirationDateTime,
+                       String creatorUuid, String creatorUsername, String creatorFirstName, String creatorLastName,
+                       Long choiceId, String choiceText, Long voteCount, Long selectedChoiceId,
+                       Instant cursorCreatedAt, Long cursorId) {
+        this.pollId = pollId;
+        this.question = question;
+        this.createdAt = createdAt;
+        this.expirationDateTime = expirationDateTime;
+        this.creatorUuid = creatorUuid;
+        this.creatorUsername = creatorUsername;
+        this.creatorFirstName = creatorFirstName;
+        this.creatorLastName = creatorLastName;
+        this.choiceId = choiceId;
+        this.choiceText = choiceText;
+        this.voteCount = voteCount;
+        this.selectedChoiceId = selectedChoiceId;
+        this.cursorCreatedAt = cursorCreatedAt;
+        this.cursorId = cursorId;
+    }
+
+    public Long getPollId() {
+        return pollId;
+    }
+
+    public String getQuestion() {
+        return question;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getExpirationDateTime() {
+        return expirationDateTime;
+    }
+
+    public String getCreatorUuid() {
+        return creatorUuid;
+    }
+
+    public String getCreatorUsername() {
+        return creatorUsername;
+    }
+
+    public String getCreatorFirstName() {
+        return creatorFirstName;
+    }
+
+    public String getCreatorLastName() {
+        return creatorLastName;
+    }
+
+    public Long getChoiceId() {
+        return choiceId;
+    }
+
+    public String getChoiceText() {
+        return choiceText;
+    }
+
+    public Long getVoteCount() {
+        return voteCount;
+    }
+
+    public Long getSelectedChoiceId() {
+        return selectedChoiceId;
+    }
+
+    public Instant getCursorCreatedAt() {
+        return cursorCreatedAt;
+    }
+
+    public Long getCursorId() {
+        return cursorId;
+    }
+}
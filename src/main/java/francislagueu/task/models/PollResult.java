@@ -0,0 +1,68 @@
+package francislagueu.task.models;
+
+import javax.persistence.*;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+@Entity
+@Table(name = "poll_results")
+public class PollResult {
+    @Id
+    @Column(name = "poll_id")
+    private Long pollId;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "poll_result_choices", joinColumns = @JoinColumn(name = "poll_id"),
+            foreignKey = @ForeignKey(name = "poll_result_choices_poll_id_fkey"))
+    @MapKeyColumn(name = "choice_id")
+    @Column(name = "vote_count", nullable = false)
+    private Map<Long, Long> choiceVotes = new HashMap<>();
+
+    private long totalVotes;
+
+    @Column(nullable = false)
+    private Instant closedAt;
+
+    public PollResult() {
+    }
+
+    public PollResult(Long pollId, Map<Long, Long> choiceVotes, Instant closedAt) {
+        this.pollId = pollId;
+        this.choiceVotes = new HashMap<>(choiceVotes);
+        this.totalVotes = choiceVotes.values().stream().mapToLong(Long::longValue).sum();
+        this.closedAt = closedAt;
+    }
+
+    public Long getPollId() {
+        return pollId;
+    }
+
+    public void setPollId(Long pollId) {
+        this.pollId = pollId;
+    }
+
+    public Map<Long, Long> getChoiceVotes() {
+        return choiceVotes;
+    }
+
+    public void setChoiceVotes(Map<Long, Long> choiceVotes) {
+        this.choiceVotes = choiceVotes;
+    }
+
+    public long getTotalVotes() {
+        return totalVotes;
+    }
+
+    public void setTotalVotes(long totalVotes) {
+        this.totalVotes = totalVotes;
+    }
+
+    public Instant getClosedAt() {
+        return closedAt;
+    }
+
+    public void setClosedAt(Instant closedAt) {
+        this.closedAt = closedAt;
+    }
+}
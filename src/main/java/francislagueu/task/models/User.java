@@ -1,7 +1,6 @@
 package francislagueu.task.models;
 
 import francislagueu.task.models.audit.DateAudit;
-import org.hibernate.annotations.GenericGenerator;
 
 import javax.persistence.*;
 import javax.validation.constraints.Email;
@@ -9,14 +8,21 @@ import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.Size;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.UUID;
 
 @Entity
-@Table(name = "user_entity")
+@Table(name = "user_entity", uniqueConstraints = {
+        @UniqueConstraint(name = "user_entity_uuid_key", columnNames = "uuid")
+})
 public class User extends DateAudit {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO, generator = "system-uuid")
-    @GenericGenerator(name = "system-uuid", strategy = "uuid2")
-    private String id;
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_seq")
+    @SequenceGenerator(name = "user_seq", sequenceName = "user_entity_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false, updatable = false, length = 36)
+    private String uuid;
+
     @NotEmpty
     private String firstName;
     @NotEmpty
@@ -35,7 +41,7 @@ public class User extends DateAudit {
 
     @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(name = "user_roles",
-    joinColumns = @JoinColumn(name = "user_id"), inverseJoinColumns = @JoinColumn(name = "role_id"))
+    joinColumns = @JoinColumn(name = "user_id", foreignKey = @ForeignKey(name = "user_roles_user_id_fkey")), inverseJoinColumns = @JoinColumn(name = "role_id"))
     private Set<Role> roles = new HashSet<>();
 
     public User() {
@@ -49,14 +55,29 @@ public class User extends DateAudit {
         this.username = username;
     }
 
-    public String getId() {
+    @PrePersist
+    void assignUuid() {
+        if(uuid == null) {
+            uuid = UUID.randomUUID().toString();
+        }
+    }
+
+    public Long getId() {
         return id;
     }
 
-    public void setId(String id) {
+    public void setId(Long id) {
         this.id = id;
     }
 
+    public String getUuid() {
+        return uuid;
+    }
+
+    public void setUuid(String uuid) {
+        this.uuid = uuid;
+    }
+
     public String getFirstName() {
         return firstName;
     }
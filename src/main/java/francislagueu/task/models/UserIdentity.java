@@ -0,0 +1,27 @@
+package francislagueu.task.models;
+
+public class UserIdentity {
+    private String username;
+    private String email;
+
+    public UserIdentity(String username, String email) {
+        this.username = username;
+        this.email = email;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+}
@@ -0,0 +1,56 @@
+package francislagueu.task.models;
+
+import javax.persistence.*;
+
+@Entity
+@Table(name = "user_stats")
+public class UserStats {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    private long pollCount;
+
+    private long voteCount;
+
+    private long votesReceived;
+
+    public UserStats() {
+    }
+
+    public UserStats(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public long getPollCount() {
+        return pollCount;
+    }
+
+    public void setPollCount(long pollCount) {
+        this.pollCount = pollCount;
+    }
+
+    public long getVoteCount() {
+        return voteCount;
+    }
+
+    public void setVoteCount(long voteCount) {
+        this.voteCount = voteCount;
+    }
+
+    public long getVotesReceived() {
+        return votesReceived;
+    }
+
+    public void setVotesReceived(long votesReceived) {
+        this.votesReceived = votesReceived;
+    }
+}
@@ -0,0 +1,34 @@
+package francislagueu.task.models;
+
+public class UserStatsCheck {
+    private Long userId;
+    private Long storedPollCount;
+    private Long actualPollCount;
+    private Long storedVoteCount;
+    private Long actualVoteCount;
+
+    public UserStatsCheck(Long userId, Long storedPollCount, Long actualPollCount, Long storedVoteCount,
+                          Long actualVoteCount) {
+        this.userId = userId;
+        this.storedPollCount = storedPollCount;
+        this.actualPollCount = actualPollCount;
+        this.storedVoteCount = storedVoteCount;
+        this.actualVoteCount = actualVoteCount;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public long getPollCountDrift() {
+        return actualPollCount - storedPollCount;
+    }
+
+    public long getVoteCountDrift() {
+        return actualVoteCount - storedVoteCount;
+    }
+
+    public boolean hasDrift() {
+        return getPollCountDrift() != 0 || getVoteCountDrift() != 0;
+    }
+}
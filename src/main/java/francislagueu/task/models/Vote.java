@@ -6,11 +6,18 @@ import javax.persistence.*;
 
 @Entity
 @Table(name = "votes", uniqueConstraints = {
-        @UniqueConstraint(columnNames = {"poll_id", "user_id"})
+        @UniqueConstraint(name = "votes_poll_id_user_id_key", columnNames = {"poll_id", "user_id"})
+}, indexes = {
+        @Index(name = "votes_user_id_created_at_idx", columnList = "user_id, createdAt, id"),
+        @Index(name = "votes_choice_id_idx", columnList = "choice_id")
 })
 public class Vote extends DateAudit {
+    public static final String ID_SEQUENCE = "votes_seq";
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "vote_seq")
+    @SequenceGenerator(name = "vote_seq", sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY, optional = false)
@@ -22,7 +29,7 @@ public class Vote extends DateAudit {
     private Choice choice;
 
     @ManyToOne(fetch = FetchType.LAZY, optional = false)
-    @JoinColumn(name = "user_id", nullable = false)
+    @JoinColumn(name = "user_id", nullable = false, foreignKey = @ForeignKey(name = "votes_user_id_fkey"))
     private User user;
 
     public Long getId() {
@@ -0,0 +1,53 @@
+package francislagueu.task.payload;
+
+import java.util.List;
+
+public class CursorPagedResponse<T> {
+
+    private List<T> content;
+    private int size;
+    private String next;
+    private boolean last;
+
+    public CursorPagedResponse() {
+    }
+
+    public CursorPagedResponse(List<T> content, int size, String next, boolean last) {
+        this.content = content;
+        this.size = size;
+        this.next = next;
+        this.last = last;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public void setContent(List<T> content) {
+        this.content = content;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+
+    public boolean isLast() {
+        return last;
+    }
+
+    public void setLast(boolean last) {
+        this.last = last;
+    }
+}
@@ -0,0 +1,42 @@
+package francislagueu.task.payload;
+
+import java.util.List;
+
+public class PollTally {
+    private Long pollId;
+    private List<ChoiceResponse> choices;
+    private long totalVotes;
+
+    public PollTally() {
+    }
+
+    public PollTally(Long pollId, List<ChoiceResponse> choices, long totalVotes) {
+        this.pollId = pollId;
+        this.choices = choices;
+        this.totalVotes = totalVotes;
+    }
+
+    public Long getPollId() {
+        return pollId;
+    }
+
+    public void setPollId(Long pollId) {
+        this.pollId = pollId;
+    }
+
+    public List<ChoiceResponse> getChoices() {
+        return choices;
+    }
+
+    public void setChoices(List<ChoiceResponse> choices) {
+        this.choices = choices;
+    }
+
+    public long getTotalVotes() {
+        return totalVotes;
+    }
+
+    public void setTotalVotes(long totalVotes) {
+        this.totalVotes = totalVotes;
+    }
+}
@@ -11,8 +11,9 @@ public class UserProfile {
     private Instant joinedAt;
     private Long pollCount;
     private Long voteCount;
+    private Long votesReceived;
 
-    public UserProfile(String id, String username, String firstName, String lastName, Instant joinedAt, Long pollCount, Long voteCount) {
+    public UserProfile(String id, String username, String firstName, String lastName, Instant joinedAt, Long pollCount, Long voteCount, Long votesReceived) {
         this.id = id;
         this.username = username;
         this.firstName = firstName;
@@ -20,6 +21,7 @@ public class UserProfile {
         this.joinedAt = joinedAt;
         this.pollCount = pollCount;
         this.voteCount = voteCount;
+        this.votesReceived = votesReceived;
     }
 
     public String getId() {
@@ -77,4 +79,12 @@ public class UserProfile {
     public void setVoteCount(Long voteCount) {
         this.voteCount = voteCount;
     }
+
+    public Long getVotesReceived() {
+        return votesReceived;
+    }
+
+    public void setVotesReceived(Long votesReceived) {
+        this.votesReceived = votesReceived;
+    }
 }
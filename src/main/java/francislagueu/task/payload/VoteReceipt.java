@@ -0,0 +1,47 @@
+package francislagueu.task.payload;
+
+public class VoteReceipt {
+    private String ticket;
+    private Long pollId;
+    private Long choiceId;
+    private VoteStatus status;
+
+    public VoteReceipt(String ticket, Long pollId, Long choiceId, VoteStatus status) {
+        this.ticket = ticket;
+        this.pollId = pollId;
+        this.choiceId = choiceId;
+        this.status = status;
+    }
+
+    public String getTicket() {
+        return ticket;
+    }
+
+    public void setTicket(String ticket) {
+        this.ticket = ticket;
+    }
+
+    public Long getPollId() {
+        return pollId;
+    }
+
+    public void setPollId(Long pollId) {
+        this.pollId = pollId;
+    }
+
+    public Long getChoiceId() {
+        return choiceId;
+    }
+
+    public void setChoiceId(Long choiceId) {
+        this.choiceId = choiceId;
+    }
+
+    public VoteStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(VoteStatus status) {
+        this.status = status;
+    }
+}
@@ -0,0 +1,9 @@
+package francislagueu.task.payload;
+
+public enum VoteStatus {
+    PENDING,
+    ACCEPTED,
+    DUPLICATE,
+    REJECTED,
+    FAILED
+}
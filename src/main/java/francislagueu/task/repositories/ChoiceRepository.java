@@ -0,0 +1,39 @@
+package francislagueu.task.repositories;
+
+import francislagueu.task.models.Choice;
+import francislagueu.task.models.ChoiceVoteCount;
+import francislagueu.task.models.ChoiceVoteCountCheck;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface ChoiceRepository extends JpaRepository<Choice, Long> {
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Choice c SET c.voteCount = c.voteCount + 1 WHERE c.id = :choiceId")
+    int incrementVoteCount(@Param("choiceId") Long choiceId);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Choice c SET c.voteCount = c.voteCount + :delta WHERE c.id = :choiceId")
+    int adjustVoteCount(@Param("choiceId") Long choiceId, @Param("delta") long delta);
+
+    @Query("SELECT NEW francislagueu.task.models.ChoiceVoteCount(c.id, " +
+            "c.voteCount + COALESCE((SELECT SUM(s.voteCount) FROM ChoiceVoteShard s WHERE s.choice = c), 0)) " +
+            "FROM Choice c WHERE c.poll.id = :pollId")
+    List<ChoiceVoteCount> sumVoteCountsByPollId(@Param("pollId") Long pollId);
+
+    @Query("SELECT NEW francislagueu.task.models.ChoiceVoteCountCheck(c.id, " +
+            "c.voteCount + COALESCE((SELECT SUM(s.voteCount) FROM ChoiceVoteShard s WHERE s.choice = c), 0), " +
+            "(SELECT COUNT(v.id) FROM Vote v WHERE v.choice = c)) " +
+            "FROM Choice c WHERE c.id > :afterId ORDER BY c.id")
+    List<ChoiceVoteCountCheck> checkVoteCountsAfter(@Param("afterId") Long afterId, Pageable pageable);
+}
@@ -0,0 +1,29 @@
+package francislagueu.task.repositories;
+
+import francislagueu.task.models.ChoiceVoteCount;
+import francislagueu.task.models.ChoiceVoteShard;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface ChoiceVoteShardRepository extends JpaRepository<ChoiceVoteShard, Long> {
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ChoiceVoteShard s SET s.voteCount = s.voteCount + 1 WHERE s.choice.id = :choiceId AND s.shard = :shard")
+    int incrementVoteCount(@Param("choiceId") Long choiceId, @Param("shard") int shard);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ChoiceVoteShard s SET s.voteCount = s.voteCount + :delta WHERE s.choice.id = :choiceId AND s.shard = :shard")
+    int adjustVoteCount(@Param("choiceId") Long choiceId, @Param("shard") int shard, @Param("delta") long delta);
+
+    @Query("SELECT NEW francislagueu.task.models.ChoiceVoteCount(s.choice.id, SUM(s.voteCount)) FROM ChoiceVoteShard s WHERE s.poll.id IN :pollIds GROUP BY s.choice.id")
+    List<ChoiceVoteCount> sumByPollIdInGroupByChoiceId(@Param("pollIds") List<Long> pollIds);
+}
@@ -1,23 +1,47 @@
 package francislagueu.task.repositories;
 
 import francislagueu.task.models.Poll;
+import francislagueu.task.models.PollExpiration;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 @Repository
-public interface PollRepository extends JpaRepository<Poll, Long> {
+public interface PollRepository extends JpaRepository<Poll, Long>, PollRepositoryCustom {
 
     Optional<Poll> findById(Long pollId);
 
-   Page<Poll> findByCreatedAtBy(String userId, Pageable pageable);
+    Page<Poll> findByCreatedBy(Long userId, Pageable pageable);
 
-    long countByCreatedBy(String userId);
+    long countByCreatedBy(Long userId);
     List<Poll> findByIdIn(List<Long> pollIds);
     List<Poll> findByIdIn(List<Long> pollIds, Sort sort);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Poll p SET p.counterShards = :shards WHERE p.id = :pollId AND p.counterShards = 0")
+    int enableCounterShards(@Param("pollId") Long pollId, @Param("shards") int shards);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT NEW francislagueu.task.models.PollExpiration(p.id, p.expirationDateTime) FROM Poll p WHERE p.closed = false")
+    Stream<PollExpiration> streamOpenPollExpirations();
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Poll p SET p.closed = true WHERE p.id = :pollId AND p.closed = false")
+    int close(@Param("pollId") Long pollId);
 }
@@ -0,0 +1,22 @@
+package francislagueu.task.repositories;
+
+import francislagueu.task.models.PollFeedRow;
+import francislagueu.task.util.FeedCursor;
+
+import java.util.List;
+
+public interface PollRepositoryCustom {
+
+    /**
+     * Reads up to {@code limit} polls, newest first, with everything a feed page shows, in one statement.
+     * Polls are restricted to {@code creatorId} when given, start after {@code after} when given (otherwise
+     * {@code offset} polls are skipped), and carry the choice {@code viewerId} voted for when given.
+     */
+    List<PollFeedRow> findFeedRows(Long creatorId, Long viewerId, FeedCursor after, long offset, int limit);
+
+    /**
+     * Same as {@link #findFeedRows} for the polls {@code voterId} voted in, most recent vote first, with
+     * {@code after} positioned on the vote rather than the poll.
+     */
+    List<PollFeedRow> findVotedFeedRows(Long voterId, Long viewerId, FeedCursor after, long offset, int limit);
+}
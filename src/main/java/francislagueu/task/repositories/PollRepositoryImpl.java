@@ -0,0 +1,91 @@
+package francislagueu.task.repositories;
+
+import francislagueu.task.models.Poll;
+import francislagueu.task.models.PollFeedRow;
+import francislagueu.task.util.FeedCursor;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PollRepositoryImpl implements PollRepositoryCustom {
+
+    private static final String SEEK = "%1$screated_at <= :afterCreatedAt AND (%1$screated_at < :afterCreatedAt OR %1$sid < :afterId)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<PollFeedRow> findFeedRows(Long creatorId, Long viewerId, FeedCursor after, long offset, int limit) {
+        List<String> conditions = new ArrayList<>();
+        if(creatorId != null){
+            conditions.add("created_by = :creatorId");
+        }
+        if(after != null){
+            conditions.add(String.format(SEEK, ""));
+        }
+        String polls = "SELECT id, question, created_at, expiration_date_time, created_by, counter_shards, closed, " +
+                "created_at AS cursor_created_at, id AS cursor_id FROM polls " +
+                (conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions) + " ") +
+                "ORDER BY created_at DESC, id DESC LIMIT :limit OFFSET :offset";
+
+        Query query = createFeedQuery(polls, viewerId, after, offset, limit);
+        if(creatorId != null){
+            query.setParameter("creatorId", creatorId);
+        }
+        return getRows(query);
+    }
+
+    @Override
+    public List<PollFeedRow> findVotedFeedRows(Long voterId, Long viewerId, FeedCursor after, long offset, int limit) {
+        String polls = "SELECT p.id, p.question, p.created_at, p.expiration_date_time, p.created_by, p.counter_shards, p.closed, " +
+                "uv.created_at AS cursor_created_at, uv.id AS cursor_id " +
+                "FROM votes uv JOIN polls p ON p.id = uv.poll_id WHERE uv.user_id = :voterId " +
+                (after != null ? "AND " + String.format(SEEK, "uv.") + " " : "") +
+                "ORDER BY uv.created_at DESC, uv.id DESC LIMIT :limit OFFSET :offset";
+
+        return getRows(createFeedQuery(polls, viewerId, after, offset, limit).setParameter("voterId", voterId));
+    }
+
+    /**
+     * Joins one page of polls, selected and ordered by {@code polls}, with their choices, vote counts, creator
+     * and the viewer's vote. Closed polls take their counts from the results snapshot, and shard sums are only
+     * read for open polls whose counter is sharded.
+     */
+    private Query createFeedQuery(String polls, Long viewerId, FeedCursor after, long offset, int limit){
+        String sql = "SELECT p.id AS poll_id, p.question, p.created_at, p.expiration_date_time, " +
+                "u.uuid AS creator_uuid, u.username AS creator_username, " +
+                "u.first_name AS creator_first_name, u.last_name AS creator_last_name, " +
+                "c.id AS choice_id, c.text AS choice_text, " +
+                "CASE WHEN p.closed THEN COALESCE(r.vote_count, 0) " +
+                "ELSE c.vote_count + CASE WHEN p.counter_shards > 0 THEN COALESCE((SELECT SUM(s.vote_count) " +
+                "FROM choice_vote_shards s WHERE s.choice_id = c.id), 0) ELSE 0 END END AS vote_count, " +
+                (viewerId != null ? "v.choice_id" : "NULL") + " AS selected_choice_id, " +
+                "p.cursor_created_at, p.cursor_id " +
+                "FROM (" + polls + ") p " +
+                "JOIN choices c ON c.poll_id = p.id " +
+                "LEFT JOIN poll_result_choices r ON r.poll_id = p.id AND r.choice_id = c.id " +
+                "LEFT JOIN user_entity u ON u.id = p.created_by " +
+                (viewerId != null ? "LEFT JOIN votes v ON v.poll_id = p.id AND v.user_id = :viewerId " : "") +
+                "ORDER BY p.cursor_created_at DESC, p.cursor_id DESC, c.id";
+
+        Query query = entityManager.createNativeQuery(sql, Poll.FEED_ROW_MAPPING)
+                .setParameter("limit", limit)
+                .setParameter("offset", offset);
+        if(after != null){
+            query.setParameter("afterCreatedAt", after.getCreatedAt())
+                    .setParameter("afterId", after.getId());
+        }
+        if(viewerId != null){
+            query.setParameter("viewerId", viewerId);
+        }
+        return query;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<PollFeedRow> getRows(Query query){
+        return query.getResultList();
+    }
+}
@@ -0,0 +1,16 @@
+package francislagueu.task.repositories;
+
+import francislagueu.task.models.PollResult;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface PollResultRepository extends JpaRepository<PollResult, Long> {
+
+    @Query("SELECT DISTINCT r FROM PollResult r LEFT JOIN FETCH r.choiceVotes WHERE r.pollId IN :pollIds")
+    List<PollResult> findByPollIdIn(@Param("pollIds") List<Long> pollIds);
+}
@@ -1,17 +1,42 @@
 package francislagueu.task.repositories;
 
 import francislagueu.task.models.User;
+import francislagueu.task.models.UserIdentity;
+import francislagueu.task.payload.UserProfile;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
 import java.util.*;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 @Repository
-public interface UserRepository  extends JpaRepository<User, String> {
+public interface UserRepository  extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
     Optional<User> findByUsernameOrEmail(String username, String email);
-    List<User> findByIdIn(List<String> userIds);
+    List<User> findByIdIn(List<Long> userIds);
+    Optional<User> findByUuid(String uuid);
+
+    @Query("SELECT u FROM User u LEFT JOIN FETCH u.roles WHERE u.uuid = :uuid")
+    Optional<User> findWithRolesByUuid(@Param("uuid") String uuid);
     Optional<User> findByUsername(String username);
     Boolean existsByUsername(String username);
     Boolean existsByEmail(String email);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT NEW francislagueu.task.models.UserIdentity(u.username, u.email) FROM User u")
+    Stream<UserIdentity> streamIdentities();
+
+    @Query("SELECT MAX(u.id) FROM User u")
+    Long findMaxId();
+
+    @Query("SELECT NEW francislagueu.task.payload.UserProfile(u.uuid, u.username, u.firstName, u.lastName, u.createdAt, " +
+            "s.pollCount, s.voteCount, s.votesReceived) FROM User u LEFT JOIN UserStats s ON s.userId = u.id " +
+            "WHERE u.username = :username")
+    Optional<UserProfile> findProfileByUsername(@Param("username") String username);
 }
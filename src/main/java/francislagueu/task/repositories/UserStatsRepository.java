@@ -0,0 +1,61 @@
+package francislagueu.task.repositories;
+
+import francislagueu.task.models.UserStats;
+import francislagueu.task.models.UserStatsCheck;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface UserStatsRepository extends JpaRepository<UserStats, Long> {
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE UserStats s SET s.pollCount = s.pollCount + 1 WHERE s.userId = :userId")
+    int incrementPollCount(@Param("userId") Long userId);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE UserStats s SET s.voteCount = s.voteCount + 1 WHERE s.userId = :userId")
+    int incrementVoteCount(@Param("userId") Long userId);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE UserStats s SET s.pollCount = s.pollCount + :pollDelta, s.voteCount = s.voteCount + :voteDelta " +
+            "WHERE s.userId = :userId")
+    int adjust(@Param("userId") Long userId, @Param("pollDelta") long pollDelta, @Param("voteDelta") long voteDelta);
+
+    @Query("SELECT NEW francislagueu.task.models.UserStatsCheck(s.userId, " +
+            "s.pollCount, (SELECT COUNT(p.id) FROM Poll p WHERE p.createdBy = s.userId), " +
+            "s.voteCount, (SELECT COUNT(v.id) FROM Vote v WHERE v.user.id = s.userId)) " +
+            "FROM UserStats s WHERE s.userId > :afterId ORDER BY s.userId")
+    List<UserStatsCheck> checkAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE user_stats SET votes_received = " +
+            "(SELECT COALESCE(SUM(c.vote_count), 0) FROM choices c JOIN polls p ON p.id = c.poll_id " +
+            "WHERE p.created_by = user_stats.user_id) + " +
+            "(SELECT COALESCE(SUM(s.vote_count), 0) FROM choice_vote_shards s JOIN polls p ON p.id = s.poll_id " +
+            "WHERE p.created_by = user_stats.user_id) " +
+            "WHERE user_id IN (:userIds)", nativeQuery = true)
+    int foldVotesReceived(@Param("userIds") Collection<Long> userIds);
+
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO user_stats (user_id, poll_count, vote_count, votes_received) " +
+            "SELECT u.id, " +
+            "(SELECT COUNT(*) FROM polls p WHERE p.created_by = u.id), " +
+            "(SELECT COUNT(*) FROM votes v WHERE v.user_id = u.id), " +
+            "(SELECT COUNT(*) FROM votes v JOIN polls p ON p.id = v.poll_id WHERE p.created_by = u.id) " +
+            "FROM user_entity u WHERE u.id > :afterId AND u.id <= :upToId " +
+            "AND NOT EXISTS (SELECT 1 FROM user_stats s WHERE s.user_id = u.id)", nativeQuery = true)
+    int backfill(@Param("afterId") Long afterId, @Param("upToId") Long upToId);
+}
@@ -2,14 +2,16 @@ package francislagueu.task.repositories;
 
 import francislagueu.task.models.ChoiceVoteCount;
 import francislagueu.task.models.Vote;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
-
+import javax.persistence.QueryHint;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 public interface VoteRepository extends JpaRepository<Vote, Long> {
     @Query("SELECT NEW francislagueu.task.models.ChoiceVoteCount(v.choice.id, count(v.id)) FROM Vote v WHERE v.poll.id in :pollIds GROUP BY v.choice.id")
@@ -19,14 +21,24 @@ public interface VoteRepository extends JpaRepository<Vote, Long> {
     List<ChoiceVoteCount> countByPollIdGroupByChoiceId(@Param("pollId")Long pollId);
 
     @Query("SELECT v FROM Vote v WHERE v.user.id = :userId AND v.poll.id IN :pollIds")
-    List<Vote> findByUserIdAndPollIdIn(@Param("userId")String userId, @Param("pollIds")List<Long> pollIds);
+    List<Vote> findByUserIdAndPollIdIn(@Param("userId")Long userId, @Param("pollIds")List<Long> pollIds);
 
     @Query("SELECT v FROM Vote v WHERE v.user.id = :userId AND v.poll.id = :pollId")
-    Vote findByUserIdAndPollId(@Param("userId")String userId, @Param("pollId") Long pollId);
+    Vote findByUserIdAndPollId(@Param("userId")Long userId, @Param("pollId") Long pollId);
+
+    @Query("SELECT v.choice.id FROM Vote v WHERE v.user.id = :userId AND v.poll.id = :pollId")
+    Long findChoiceIdByUserIdAndPollId(@Param("userId")Long userId, @Param("pollId") Long pollId);
 
     @Query("SELECT COUNT(v.id) FROM Vote v WHERE v.user.id = :userId")
-    long countByUserId(@Param("userId")String userId);
+    long countByUserId(@Param("userId")Long userId);
+
+    @Query("SELECT COUNT(v.id) FROM Vote v WHERE v.poll.createdBy = :userId")
+    long countByPollCreatedBy(@Param("userId")Long userId);
+
+    @Query("SELECT COUNT(v.id) FROM Vote v WHERE v.poll.id = :pollId")
+    long countByPollId(@Param("pollId")Long pollId);
 
-    @Query("SELECT v.poll.id FROM Vote v WHERE v.user.id = :userId")
-    Page<Long> findVotedPollIdsByUserId(@Param("userId")String userId, Pageable pageable);
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT v.user.id FROM Vote v WHERE v.poll.id = :pollId")
+    Stream<Long> streamUserIdsByPollId(@Param("pollId")Long pollId);
 }
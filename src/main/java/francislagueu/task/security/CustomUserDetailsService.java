@@ -1,20 +1,80 @@
 package francislagueu.task.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import francislagueu.task.exception.ServiceUnavailableException;
 import francislagueu.task.models.User;
 import francislagueu.task.repositories.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads users for login and for each bearer token. Principals behind bearer tokens are cached by uuid for
+ * {@code app.userPrincipalCacheTtlInMs}, in a Caffeine cache whose frequency based admission keeps the users
+ * that are active out of reach of a scan of one-off visitors. Concurrent misses on one user share a single load
+ * and at most {@code app.userPrincipalCacheMaxConcurrentLoads} users are loaded at once, so a cold cache after a
+ * restart queues requests instead of taking every connection. The wait for a load slot happens before the cache is
+ * entered, so it never holds up hits on other users, and gives up with a {@link ServiceUnavailableException} after
+ * {@code app.userPrincipalCacheLoadTimeoutInMs}. Entries are dropped when Hibernate in this instance
+ * updates or deletes their user or changes its roles; other instances catch up when the entry expires.
+ */
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
 
     @Autowired
     UserRepository userRepository;
 
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Value("${app.userPrincipalCacheMaxUsers}")
+    private long cacheMaxUsers;
+
+    @Value("${app.userPrincipalCacheTtlInMs}")
+    private long cacheTtlInMs;
+
+    @Value("${app.userPrincipalCacheMaxConcurrentLoads}")
+    private int maxConcurrentLoads;
+
+    @Value("${app.userPrincipalCacheLoadTimeoutInMs}")
+    private long loadTimeoutInMs;
+
+    private Cache<String, UserPrincipal> principals;
+    private Semaphore loads;
+
+    @PostConstruct
+    void init(){
+        principals = Caffeine.newBuilder()
+                .maximumSize(cacheMaxUsers)
+                .expireAfterWrite(Duration.ofMillis(cacheTtlInMs))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, principals, "user.principals");
+        loads = new Semaphore(maxConcurrentLoads);
+        new UserPrincipalInvalidator(this::evict).register(entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class));
+    }
+
     @Override
     @Transactional
     public UserDetails loadUserByUsername(String usernameOrEmail) throws UsernameNotFoundException {
@@ -22,10 +82,46 @@ public class CustomUserDetailsService implements UserDetailsService {
         return UserPrincipal.create(user);
     }
 
-    @Transactional
-    public UserDetails loadUserById(String id){
-        User user = userRepository.findById(id).orElseThrow(
-                ()-> new UsernameNotFoundException("User not found with id: "+id)
+    public UserDetails loadUserByUuid(String uuid){
+        UserPrincipal principal = principals.getIfPresent(uuid);
+        if(principal != null){
+            return principal;
+        }
+        acquireLoad();
+        try{
+            return principals.get(uuid, this::load);
+        }finally {
+            loads.release();
+        }
+    }
+
+    public void evict(String uuid){
+        principals.invalidate(uuid);
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            // A load racing the change may still read the old row until it commits
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    principals.invalidate(uuid);
+                }
+            });
+        }
+    }
+
+    private void acquireLoad(){
+        try{
+            if(!loads.tryAcquire(loadTimeoutInMs, TimeUnit.MILLISECONDS)){
+                throw new ServiceUnavailableException("Too many users loading, please retry");
+            }
+        }catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Interrupted while waiting to load the user", ex);
+        }
+    }
+
+    private UserPrincipal load(String uuid){
+        User user = userRepository.findWithRolesByUuid(uuid).orElseThrow(
+                ()-> new UsernameNotFoundException("User not found with id: "+uuid)
         );
         return UserPrincipal.create(user);
     }
@@ -1,6 +1,9 @@
 package francislagueu.task.security;
 
 
+import francislagueu.task.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,6 +14,7 @@ import org.springframework.security.web.authentication.WebAuthenticationDetailsS
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
+import javax.annotation.PostConstruct;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -25,21 +29,39 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private CustomUserDetailsService customUserDetailsService;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Timer verifyTimer;
+    private Timer userLoadTimer;
+
     private static final Logger logger = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
 
+    @PostConstruct
+    void init(){
+        verifyTimer = meterRegistry.timer("auth.jwt.verify");
+        userLoadTimer = meterRegistry.timer("auth.user.load");
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest httpServletRequest,
                                     HttpServletResponse httpServletResponse,
                                     FilterChain filterChain) throws ServletException, IOException {
         try{
             String jwt = getJwtFromRequest(httpServletRequest);
-            if(StringUtils.hasText(jwt) && tokenProvider.validateToken(jwt)){
-                String userId = tokenProvider.getUserIdFromJWT(jwt);
-                UserDetails userDetails = customUserDetailsService.loadUserById(userId);
+            VerifiedToken token = StringUtils.hasText(jwt) ? verifyTimer.record(() -> tokenProvider.verifyToken(jwt)) : null;
+            if(token != null){
+                UserDetails userDetails = token.getPrincipal() != null ? token.getPrincipal()
+                        : userLoadTimer.record(() -> customUserDetailsService.loadUserByUuid(token.getSubject()));
                 UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
                 authenticationToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(httpServletRequest));
                 SecurityContextHolder.getContext().setAuthentication(authenticationToken);
             }
+        }catch (ServiceUnavailableException ex){
+            // Going on unauthenticated would turn an overloaded user lookup into a 401 for a valid token
+            logger.warn("Could not load the user of a bearer token: {}", ex.getMessage());
+            httpServletResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, ex.getMessage());
+            return;
         }catch (Exception ex){
             logger.error("Could not set user authentication in security context", ex);
         }
@@ -1,34 +1,124 @@
 package francislagueu.task.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+/**
+ * Issues and verifies the HS512 bearer tokens. {@link #verifyToken} parses a token once and remembers the verified
+ * subject and expiry for up to {@code app.jwtCacheTtlInMs}, keyed by the token's SHA-256 digest so the cache holds
+ * no usable credentials, and never past the token's own expiry. Repeated requests with the same token then cost a
+ * digest instead of a signature check. Tokens that fail verification are never cached.
+ * <p>
+ * With {@code app.jwtSelfContained} tokens also carry the user's id, names and roles, so requests are
+ * authenticated without looking the user up, and live only {@code app.jwtSelfContainedExpirationInMs}; clients
+ * renew them through /api/auth/refresh, which is also when changes to the user reach the token.
+ */
 @Component
 public class JwtTokenProvider {
     private static final Logger logger = LoggerFactory.getLogger(JwtTokenProvider.class);
 
+    private static final String USER_ID = "uid";
+    private static final String USERNAME = "username";
+    private static final String FIRST_NAME = "firstName";
+    private static final String LAST_NAME = "lastName";
+    private static final String ROLES = "roles";
+
     @Value("${app.jwtSecret}")
     private String jwtSecret;
 
     @Value("${app.jwtExpirationInMs}")
     private int jwtExpirationInMs;
 
+    @Value("${app.jwtSelfContained}")
+    private boolean selfContained;
+
+    @Value("${app.jwtSelfContainedExpirationInMs}")
+    private long selfContainedExpirationInMs;
+
+    @Value("${app.jwtCacheMaxTokens}")
+    private long cacheMaxTokens;
+
+    @Value("${app.jwtCacheTtlInMs}")
+    private long cacheTtlInMs;
+
+    private Cache<String, VerifiedToken> verifiedTokens;
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try{
+            return MessageDigest.getInstance("SHA-256");
+        }catch (NoSuchAlgorithmException ex){
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    @PostConstruct
+    void init(){
+        verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(cacheMaxTokens)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String digest, VerifiedToken token, long currentTime) {
+                        if(token.getExpiration() == null){
+                            return TimeUnit.MILLISECONDS.toNanos(cacheTtlInMs);
+                        }
+                        long untilExpiration = token.getExpiration().toEpochMilli() - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, Math.min(cacheTtlInMs, untilExpiration)));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String digest, VerifiedToken token, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String digest, VerifiedToken token, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
     public String generateToken(Authentication authentication){
-        UserPrincipal userPrincipal = (UserPrincipal) authentication.getPrincipal();
+        return generateToken((UserPrincipal) authentication.getPrincipal());
+    }
+
+    public String generateToken(UserPrincipal userPrincipal){
         Date now = new Date();
-        Date expiryDate = new Date(now.getTime()+jwtExpirationInMs);
-        return Jwts.builder()
-                .setSubject(userPrincipal.getId())
-                .setIssuedAt(new Date())
-                .setExpiration(expiryDate)
-                .signWith(SignatureAlgorithm.HS512, jwtSecret)
-                .compact();
+        JwtBuilder builder = Jwts.builder()
+                .setSubject(userPrincipal.getUuid())
+                .setIssuedAt(now);
+        if(selfContained){
+            builder.claim(USER_ID, userPrincipal.getId())
+                    .claim(USERNAME, userPrincipal.getUsername())
+                    .claim(FIRST_NAME, userPrincipal.getFirstName())
+                    .claim(LAST_NAME, userPrincipal.getLastName())
+                    .claim(ROLES, userPrincipal.getAuthorities().stream()
+                            .map(GrantedAuthority::getAuthority).collect(Collectors.toList()))
+                    .setExpiration(new Date(now.getTime() + selfContainedExpirationInMs));
+        }else{
+            builder.setExpiration(new Date(now.getTime() + jwtExpirationInMs));
+        }
+        return builder.signWith(SignatureAlgorithm.HS512, jwtSecret).compact();
     }
 
     public String getUserIdFromJWT(String token){
@@ -40,9 +130,17 @@ public class JwtTokenProvider {
     }
 
     public boolean validateToken(String authToken){
+        return parseToken(authToken) != null;
+    }
+
+    /**
+     * Checks the signature and expiry of a token and returns its subject and expiry, or null if it is not valid.
+     */
+    public VerifiedToken parseToken(String authToken){
         try{
-            Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(authToken);
-            return true;
+            Claims claims = Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(authToken).getBody();
+            Date expiration = claims.getExpiration();
+            return new VerifiedToken(claims.getSubject(), expiration != null ? expiration.toInstant() : null, getPrincipal(claims));
         } catch (SignatureException ex){
             logger.error("Invalid JWT signature");
         } catch (MalformedJwtException ex){
@@ -54,6 +152,40 @@ public class JwtTokenProvider {
         } catch (IllegalArgumentException ex){
             logger.error("JWT claims string is empty.");
         }
-        return false;
+        return null;
+    }
+
+    /**
+     * Same as {@link #parseToken}, answered from the verified token cache when the token was seen recently.
+     */
+    public VerifiedToken verifyToken(String authToken){
+        if(cacheMaxTokens == 0){
+            return parseToken(authToken);
+        }
+        String digest = digest(authToken);
+        VerifiedToken token = verifiedTokens.getIfPresent(digest);
+        if(token != null && (token.getExpiration() == null || token.getExpiration().isAfter(Instant.now()))){
+            return token;
+        }
+        token = parseToken(authToken);
+        if(token != null){
+            verifiedTokens.put(digest, token);
+        }
+        return token;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static UserPrincipal getPrincipal(Claims claims){
+        if(!claims.containsKey(ROLES)){
+            return null;
+        }
+        List<GrantedAuthority> authorities = ((List<String>) claims.get(ROLES)).stream()
+                .map(SimpleGrantedAuthority::new).collect(Collectors.toList());
+        return new UserPrincipal(claims.get(USER_ID, Long.class), claims.getSubject(), claims.get(FIRST_NAME, String.class),
+                claims.get(LAST_NAME, String.class), claims.get(USERNAME, String.class), null, null, authorities);
+    }
+
+    private static String digest(String token){
+        return Base64.getEncoder().encodeToString(SHA_256.get().digest(token.getBytes(StandardCharsets.UTF_8)));
     }
 }
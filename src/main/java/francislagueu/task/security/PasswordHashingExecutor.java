@@ -0,0 +1,65 @@
+package francislagueu.task.security;
+
+import francislagueu.task.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Runs BCrypt work (password checks at login, hashing at registration) off the request threads, on
+ * {@code app.passwordHashingThreads} threads (one per CPU when 0) with at most
+ * {@code app.passwordHashingQueueCapacity} tasks waiting. When both are taken new work is refused at once with a
+ * 503, so a burst of logins can neither hold every Tomcat thread nor build a queue nobody waits for. Only the
+ * hashing itself is submitted; user lookups and writes stay off these threads so they are never waiting on the
+ * connection pool.
+ */
+@Component
+public class PasswordHashingExecutor {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.passwordHashingThreads}")
+    private int threads;
+
+    @Value("${app.passwordHashingQueueCapacity}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+    private Counter rejected;
+
+    @PostConstruct
+    void start(){
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        rejected = meterRegistry.counter("auth.password.hashing.rejected");
+        meterRegistry.gauge("auth.password.hashing.active", executor, ThreadPoolExecutor::getActiveCount);
+        meterRegistry.gauge("auth.password.hashing.queued", executor, pool -> pool.getQueue().size());
+    }
+
+    @PreDestroy
+    void stop(){
+        executor.shutdown();
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> task){
+        try{
+            return CompletableFuture.supplyAsync(task, executor);
+        }catch (RejectedExecutionException ex){
+            rejected.increment();
+            throw new ServiceUnavailableException("Too many sign-ins in progress, please retry", ex);
+        }
+    }
+}
@@ -12,7 +12,8 @@ import java.util.Objects;
 import java.util.stream.Collectors;
 
 public class UserPrincipal implements UserDetails {
-    private String id;
+    private Long id;
+    private String uuid;
     private String firstName;
     private String lastName;
     private  String username;
@@ -21,8 +22,9 @@ public class UserPrincipal implements UserDetails {
     @JsonIgnore
     private String password;
 
-    public UserPrincipal(String id, String firstName, String lastName, String username, String email, String password, Collection<? extends GrantedAuthority> authorities) {
+    public UserPrincipal(Long id, String uuid, String firstName, String lastName, String username, String email, String password, Collection<? extends GrantedAuthority> authorities) {
         this.id = id;
+        this.uuid = uuid;
         this.firstName = firstName;
         this.lastName = lastName;
         this.username = username;
@@ -33,10 +35,14 @@ public class UserPrincipal implements UserDetails {
 
     private Collection<? extends GrantedAuthority> authorities;
 
-    public String getId() {
+    public Long getId() {
         return id;
     }
 
+    public String getUuid() {
+        return uuid;
+    }
+
     public String getFirstName() {
         return firstName;
     }
@@ -89,6 +95,7 @@ public class UserPrincipal implements UserDetails {
         ).collect(Collectors.toList());
         return new UserPrincipal(
                 user.getId(),
+                user.getUuid(),
                 user.getFirstName(),
                 user.getLastName(),
                 user.getUsername(),
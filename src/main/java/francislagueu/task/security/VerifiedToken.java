@@ -0,0 +1,33 @@
+package francislagueu.task.security;
+
+import java.time.Instant;
+
+public class VerifiedToken {
+    private final String subject;
+    private final Instant expiration;
+    private final UserPrincipal principal;
+
+    public VerifiedToken(String subject, Instant expiration, UserPrincipal principal) {
+        this.subject = subject;
+        this.expiration = expiration;
+        this.principal = principal;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    /**
+     * The token's expiry, or null if it has none.
+     */
+    public Instant getExpiration() {
+        return expiration;
+    }
+
+    /**
+     * The principal carried by a self-contained token, or null for a token that only names its user.
+     */
+    public UserPrincipal getPrincipal() {
+        return principal;
+    }
+}
@@ -0,0 +1,225 @@
+package francislagueu.task.services;
+
+import francislagueu.task.models.Choice;
+import francislagueu.task.models.ChoiceVoteCount;
+import francislagueu.task.models.ChoiceVoteShard;
+import francislagueu.task.models.Poll;
+import francislagueu.task.models.PollResult;
+import francislagueu.task.repositories.ChoiceRepository;
+import francislagueu.task.repositories.ChoiceVoteShardRepository;
+import francislagueu.task.repositories.PollRepository;
+import francislagueu.task.repositories.PollResultRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Owns the per-choice vote counters. A poll starts with the single vote_count column on each choice and is
+ * switched to {@code app.voteCounterShards} rows per choice once it receives more than
+ * {@code app.voteCounterShardingThresholdPerSecond} votes in one second, so concurrent voters stop queueing
+ * on the same row lock. The column is kept as the base value and the shards only ever add to it. Shard rows are
+ * created on a thread of their own once the triggering vote's transaction completes, so a voter never holds its
+ * pooled connection while waiting for a second one.
+ */
+@Component
+public class ChoiceVoteCounter {
+
+    @Autowired
+    private ChoiceRepository choiceRepository;
+
+    @Autowired
+    private ChoiceVoteShardRepository choiceVoteShardRepository;
+
+    @Autowired
+    private PollRepository pollRepository;
+
+    @Autowired
+    private PollResultRepository pollResultRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.voteCounterShards}")
+    private int shards;
+
+    @Value("${app.voteCounterShardingThresholdPerSecond}")
+    private long shardingThresholdPerSecond;
+
+    private TransactionTemplate transaction;
+    private ExecutorService sharder;
+
+    private final Map<Long, VoteRate> voteRates = new ConcurrentHashMap<>();
+    private final Set<Long> shardingPolls = ConcurrentHashMap.newKeySet();
+
+    private static final Logger logger = LoggerFactory.getLogger(ChoiceVoteCounter.class);
+
+    @PostConstruct
+    void init(){
+        transaction = new TransactionTemplate(transactionManager);
+        sharder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vote-counter-sharder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stop(){
+        sharder.shutdown();
+    }
+
+    public void increment(Poll poll, Choice choice){
+        if(poll.isCounterSharded()){
+            int shard = ThreadLocalRandom.current().nextInt(poll.getCounterShards());
+            choiceVoteShardRepository.incrementVoteCount(choice.getId(), shard);
+            return;
+        }
+        choiceRepository.incrementVoteCount(choice.getId());
+        if(shards > 1 && recordVote(poll.getId()) > shardingThresholdPerSecond){
+            requestSharding(poll.getId());
+        }
+    }
+
+    public void add(Long choiceId, int counterShards, long votes){
+        if(counterShards > 0){
+            choiceVoteShardRepository.adjustVoteCount(choiceId, ThreadLocalRandom.current().nextInt(counterShards), votes);
+            return;
+        }
+        choiceRepository.adjustVoteCount(choiceId, votes);
+    }
+
+    /**
+     * Vote counts by choice id, taken from the final results snapshot for closed polls and from the live
+     * counters for open ones.
+     */
+    public Map<Long, Long> getChoiceVotesMap(Collection<Poll> polls){
+        Map<Long, Long> choiceVotesMap = getLiveChoiceVotesMap(polls.stream()
+                .filter(poll -> !poll.isClosed()).collect(Collectors.toList()));
+
+        List<Long> closedPollIds = polls.stream().filter(Poll::isClosed)
+                .map(Poll::getId).collect(Collectors.toList());
+        if(!closedPollIds.isEmpty()){
+            for(PollResult result : pollResultRepository.findByPollIdIn(closedPollIds)){
+                choiceVotesMap.putAll(result.getChoiceVotes());
+            }
+        }
+        return choiceVotesMap;
+    }
+
+    public Map<Long, Long> getLiveChoiceVotesMap(Collection<Poll> polls){
+        Map<Long, Long> choiceVotesMap = polls.stream().flatMap(poll -> poll.getChoices().stream())
+                .collect(Collectors.toMap(Choice::getId, Choice::getVoteCount));
+
+        List<Long> shardedPollIds = polls.stream().filter(Poll::isCounterSharded)
+                .map(Poll::getId).collect(Collectors.toList());
+        if(!shardedPollIds.isEmpty()){
+            for(ChoiceVoteCount shardCount : choiceVoteShardRepository.sumByPollIdInGroupByChoiceId(shardedPollIds)){
+                choiceVotesMap.merge(shardCount.getChoiceId(), shardCount.getVoteCount(), Long::sum);
+            }
+        }
+        return choiceVotesMap;
+    }
+
+    /**
+     * Live vote counts of one poll by choice id, shards included, read in a single query rather than from
+     * loaded choices, whose vote_count does not see the counter updates made since they were loaded.
+     */
+    public Map<Long, Long> getLiveChoiceVotesMap(Long pollId){
+        return choiceRepository.sumVoteCountsByPollId(pollId).stream()
+                .collect(Collectors.toMap(ChoiceVoteCount::getChoiceId, ChoiceVoteCount::getVoteCount));
+    }
+
+    @Scheduled(fixedDelayString = "${app.voteRateEvictIntervalInMs}")
+    public void evictIdleVoteRates(){
+        long currentSecond = System.currentTimeMillis() / 1000;
+        voteRates.values().removeIf(rate -> currentSecond - rate.second > 60);
+    }
+
+    private long recordVote(Long pollId){
+        return voteRates.computeIfAbsent(pollId, id -> new VoteRate()).increment(System.currentTimeMillis() / 1000);
+    }
+
+    private void requestSharding(Long pollId){
+        if(!shardingPolls.add(pollId)){
+            return;
+        }
+        if(!TransactionSynchronizationManager.isSynchronizationActive()){
+            submitSharding(pollId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                submitSharding(pollId);
+            }
+        });
+    }
+
+    private void submitSharding(Long pollId){
+        try{
+            sharder.execute(() -> enableSharding(pollId));
+        }catch (RejectedExecutionException ex){
+            shardingPolls.remove(pollId);
+        }
+    }
+
+    private void enableSharding(Long pollId){
+        try{
+            transaction.execute(status -> {
+                Poll poll = pollRepository.findById(pollId).orElse(null);
+                if(poll == null || pollRepository.enableCounterShards(pollId, shards) == 0){
+                    return null;
+                }
+                List<ChoiceVoteShard> shardRows = new ArrayList<>();
+                for(Choice choice : poll.getChoices()){
+                    for(int shard = 0; shard < shards; shard++){
+                        shardRows.add(new ChoiceVoteShard(poll, choice, shard));
+                    }
+                }
+                choiceVoteShardRepository.saveAll(shardRows);
+                logger.info("Poll {} switched to {} vote counter shards", pollId, shards);
+                return null;
+            });
+            voteRates.remove(pollId);
+        }catch (RuntimeException ex){
+            logger.error("Could not switch poll {} to vote counter shards", pollId, ex);
+        }finally {
+            shardingPolls.remove(pollId);
+        }
+    }
+
+    private static class VoteRate {
+        private volatile long second;
+        private final AtomicLong votes = new AtomicLong();
+
+        long increment(long currentSecond){
+            if(second != currentSecond){
+                second = currentSecond;
+                votes.set(0);
+            }
+            return votes.incrementAndGet();
+        }
+    }
+}
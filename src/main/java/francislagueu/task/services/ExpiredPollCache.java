@@ -0,0 +1,128 @@
+package francislagueu.task.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import francislagueu.task.payload.PollResponse;
+import francislagueu.task.repositories.VoteRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialized responses of closed polls, whose choices and counts no longer change. The JSON is written once
+ * without the caller's selectedChoice, which is appended per request, so reads of a frozen poll skip the poll
+ * queries and Jackson. The cache is bounded by the bytes it holds.
+ */
+@Component
+public class ExpiredPollCache {
+
+    private static final byte[] SELECTED_CHOICE = ",\"selectedChoice\":".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private VoteRepository voteRepository;
+
+    @Autowired
+    private PollVoterFilter pollVoterFilter;
+
+    @Value("${app.expiredPollCacheMaxBytes}")
+    private long maxBytes;
+
+    @Value("${app.expiredPollCacheGzip}")
+    private boolean gzip;
+
+    private Cache<Long, FrozenPoll> frozenPolls;
+
+    @PostConstruct
+    void init(){
+        frozenPolls = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Long pollId, FrozenPoll frozenPoll) -> frozenPoll.getWeight())
+                .build();
+    }
+
+    public FrozenPoll get(Long pollId){
+        return frozenPolls.getIfPresent(pollId);
+    }
+
+    /**
+     * Freezes the response of a closed poll, which must not carry a selectedChoice. A zero byte budget turns
+     * freezing off.
+     */
+    public void freeze(PollResponse pollResponse){
+        if(maxBytes == 0){
+            return;
+        }
+        try{
+            byte[] json = objectMapper.writeValueAsBytes(pollResponse);
+            frozenPolls.put(pollResponse.getId(), new FrozenPoll(json, gzip ? compress(json) : null));
+        }catch (JsonProcessingException ex){
+            throw new IllegalStateException("Could not serialize poll " + pollResponse.getId(), ex);
+        }
+    }
+
+    public Long getSelectedChoice(Long pollId, Long userId){
+        if(!pollVoterFilter.mightHaveVoted(pollId, userId)){
+            return null;
+        }
+        return voteRepository.findChoiceIdByUserIdAndPollId(userId, pollId);
+    }
+
+    public void invalidateAll(){
+        frozenPolls.invalidateAll();
+    }
+
+    private static byte[] compress(byte[] json){
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 2);
+        try(GZIPOutputStream gzipStream = new GZIPOutputStream(compressed)){
+            gzipStream.write(json);
+        }catch (IOException ex){
+            throw new UncheckedIOException(ex);
+        }
+        return compressed.toByteArray();
+    }
+
+    public static class FrozenPoll {
+        private final byte[] json;
+        private final byte[] gzip;
+
+        FrozenPoll(byte[] json, byte[] gzip) {
+            this.json = json;
+            this.gzip = gzip;
+        }
+
+        public byte[] render(Long selectedChoice){
+            if(selectedChoice == null){
+                return json;
+            }
+            byte[] choice = selectedChoice.toString().getBytes(StandardCharsets.US_ASCII);
+            byte[] rendered = Arrays.copyOf(json, json.length + SELECTED_CHOICE.length + choice.length);
+            int offset = json.length - 1;
+            System.arraycopy(SELECTED_CHOICE, 0, rendered, offset, SELECTED_CHOICE.length);
+            offset += SELECTED_CHOICE.length;
+            System.arraycopy(choice, 0, rendered, offset, choice.length);
+            rendered[rendered.length - 1] = '}';
+            return rendered;
+        }
+
+        public byte[] getGzip() {
+            return gzip;
+        }
+
+        int getWeight(){
+            return json.length + (gzip != null ? gzip.length : 0);
+        }
+    }
+}
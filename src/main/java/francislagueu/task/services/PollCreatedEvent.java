@@ -0,0 +1,21 @@
+package francislagueu.task.services;
+
+import java.time.Instant;
+
+public class PollCreatedEvent {
+    private final Long pollId;
+    private final Instant expirationDateTime;
+
+    public PollCreatedEvent(Long pollId, Instant expirationDateTime) {
+        this.pollId = pollId;
+        this.expirationDateTime = expirationDateTime;
+    }
+
+    public Long getPollId() {
+        return pollId;
+    }
+
+    public Instant getExpirationDateTime() {
+        return expirationDateTime;
+    }
+}
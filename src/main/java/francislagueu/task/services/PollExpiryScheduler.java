@@ -0,0 +1,176 @@
+package francislagueu.task.services;
+
+import francislagueu.task.models.Poll;
+import francislagueu.task.models.PollExpiration;
+import francislagueu.task.models.PollResult;
+import francislagueu.task.repositories.PollRepository;
+import francislagueu.task.repositories.PollResultRepository;
+import francislagueu.task.util.HashedTimingWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Closes polls when they expire. Every open poll waits in a hashed timing wheel, rebuilt from the database at
+ * startup and fed by poll creation. At expiry the poll's ETag version advances; {@code app.pollCloseGraceInMs}
+ * later, once votes accepted just before expiry (such as those still queued for async ingestion) have landed,
+ * its per-choice totals are written to poll_results and the poll is marked closed. Closing is guarded by the
+ * closed flag, so a poll is snapshotted once even when several instances race for it. A close that fails is
+ * retried after {@code app.pollCloseRetryInMs}, doubling up to {@code app.pollCloseMaxRetryInMs}.
+ */
+@Component
+public class PollExpiryScheduler {
+
+    @Autowired
+    private PollRepository pollRepository;
+
+    @Autowired
+    private PollResultRepository pollResultRepository;
+
+    @Autowired
+    private ChoiceVoteCounter choiceVoteCounter;
+
+    @Autowired
+    private PollVersions pollVersions;
+
+    @Autowired
+    private VoteTallyCache voteTallyCache;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.pollExpiryTickInMs}")
+    private long tickInMs;
+
+    @Value("${app.pollExpiryTicksPerWheel}")
+    private int ticksPerWheel;
+
+    @Value("${app.pollCloseGraceInMs}")
+    private long closeGraceInMs;
+
+    @Value("${app.pollCloseRetryInMs}")
+    private long closeRetryInMs;
+
+    @Value("${app.pollCloseMaxRetryInMs}")
+    private long closeMaxRetryInMs;
+
+    private HashedTimingWheel expiries;
+    private HashedTimingWheel closings;
+    private ExecutorService closer;
+    private final Map<Long, Long> closeRetries = new ConcurrentHashMap<>();
+    private TransactionTemplate transaction;
+    private Counter closedPolls;
+    private Counter closeFailures;
+
+    private static final Logger logger = LoggerFactory.getLogger(PollExpiryScheduler.class);
+
+    @PostConstruct
+    void start(){
+        transaction = new TransactionTemplate(transactionManager);
+        closer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "poll-closer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        expiries = new HashedTimingWheel("poll-expiries", tickInMs, ticksPerWheel, this::onExpired);
+        closings = new HashedTimingWheel("poll-closings", tickInMs, ticksPerWheel,
+                pollId -> closer.execute(() -> closeOrRetry(pollId)));
+        meterRegistry.gauge("polls.expiry.pending", expiries, HashedTimingWheel::getPending);
+        closedPolls = meterRegistry.counter("polls.closed");
+        closeFailures = meterRegistry.counter("polls.close.failures");
+        rebuild();
+    }
+
+    @PreDestroy
+    void stop(){
+        expiries.close();
+        closings.close();
+        closer.shutdown();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPollCreated(PollCreatedEvent event){
+        expiries.schedule(event.getPollId(), event.getExpirationDateTime());
+    }
+
+    /**
+     * Writes the final results of an expired poll and marks it closed. Returns false when the poll is already
+     * closed or does not exist.
+     */
+    public boolean close(Long pollId){
+        Boolean closed = transaction.execute(status -> {
+            if(pollRepository.close(pollId) == 0){
+                return false;
+            }
+            Poll poll = pollRepository.findById(pollId).orElseThrow(IllegalStateException::new);
+            pollResultRepository.save(new PollResult(pollId,
+                    choiceVoteCounter.getLiveChoiceVotesMap(Collections.singletonList(poll)), Instant.now()));
+            return true;
+        });
+        if(Boolean.TRUE.equals(closed)){
+            voteTallyCache.evict(pollId);
+            closedPolls.increment();
+        }
+        return Boolean.TRUE.equals(closed);
+    }
+
+    private void closeOrRetry(long pollId){
+        try{
+            close(pollId);
+            closeRetries.remove(pollId);
+        }catch (RuntimeException ex){
+            long retryInMs = closeRetries.merge(pollId, closeRetryInMs, (previous, initial) -> Math.min(previous * 2, closeMaxRetryInMs));
+            logger.error("Could not close poll {}, retrying in {} ms", pollId, retryInMs, ex);
+            closeFailures.increment();
+            closings.schedule(pollId, Instant.now().plusMillis(retryInMs));
+        }
+    }
+
+    private void onExpired(long pollId){
+        pollVersions.onPollExpired(pollId);
+        closings.schedule(pollId, Instant.now().plusMillis(closeGraceInMs));
+    }
+
+    private void rebuild(){
+        long start = System.nanoTime();
+        Instant now = Instant.now();
+        TransactionTemplate readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setReadOnly(true);
+        AtomicLong scheduled = new AtomicLong();
+        readTransaction.execute(status -> {
+            try(Stream<PollExpiration> expirations = pollRepository.streamOpenPollExpirations()){
+                expirations.forEach(expiration -> {
+                    if(expiration.getExpirationDateTime().isAfter(now)){
+                        expiries.schedule(expiration.getPollId(), expiration.getExpirationDateTime());
+                    }else{
+                        closings.schedule(expiration.getPollId(), expiration.getExpirationDateTime().plusMillis(closeGraceInMs));
+                    }
+                    scheduled.incrementAndGet();
+                });
+            }
+            return null;
+        });
+        logger.info("Scheduled expiry of {} open polls in {} ms", scheduled.get(), (System.nanoTime() - start) / 1_000_000);
+    }
+}
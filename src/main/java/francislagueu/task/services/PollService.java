@@ -3,33 +3,39 @@ package francislagueu.task.services;
 import francislagueu.task.exception.BadRequestException;
 import francislagueu.task.exception.ResourceNotFoundException;
 import francislagueu.task.models.*;
+import francislagueu.task.payload.CursorPagedResponse;
 import francislagueu.task.payload.PagedResponse;
 import francislagueu.task.payload.PollRequest;
 import francislagueu.task.payload.PollResponse;
+import francislagueu.task.payload.VoteReceipt;
 import francislagueu.task.payload.VoteRequest;
 import francislagueu.task.repositories.PollRepository;
 import francislagueu.task.repositories.UserRepository;
 import francislagueu.task.repositories.VoteRepository;
 import francislagueu.task.security.UserPrincipal;
 import francislagueu.task.util.AppConstants;
+import francislagueu.task.util.FeedCursor;
 import francislagueu.task.util.ModelMapper;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 
 @Service
 public class PollService {
@@ -43,90 +49,98 @@ public class PollService {
     @Autowired
     private UserRepository userRepository;
 
-    private static final Logger logger = LoggerFactory.getLogger(PollService.class);
+    @Autowired
+    private ChoiceVoteCounter choiceVoteCounter;
 
-    public PagedResponse<PollResponse> getAllPolls(UserPrincipal currentUser, int page, int size){
-        validatePageNumberAndSize(page, size);
-        //Retrieve Polls
-        Pageable pageable = PageRequest.of(page, size, Sort.Direction.DESC, "createdAt");
-        Page<Poll> polls = pollRepository.findAll(pageable);
+    @Autowired
+    private VoteTallyCache voteTallyCache;
 
-        if(polls.getNumberOfElements() == 0){
-            return new PagedResponse<>(Collections.emptyList(), polls.getNumber(),
-                    polls.getSize(), polls.getTotalElements(), polls.getTotalPages(), polls.isLast());
-        }
+    @Autowired
+    private VoteIngestionService voteIngestionService;
 
-        List<Long> pollIds = polls.map(Poll::getId).getContent();
-        Map<Long, Long> choiceVotCountMap = getChoiceVoteCountMap(pollIds);
-        Map<Long, Long> pollUserVoteMap = getPollUserVoteMap(currentUser, pollIds);
-        Map<String, User> creatorMap = getPollCreatorMap(polls.getContent());
+    @Autowired
+    private ExpiredPollCache expiredPollCache;
 
-        List<PollResponse> pollResponses = polls.map(poll -> ModelMapper.mapPollToPollResponse(poll,
-                choiceVotCountMap,
-                creatorMap.get(poll.getCreatedBy()),
-                pollUserVoteMap == null ? null : pollUserVoteMap.getOrDefault(poll.getId(), null)
-                )).getContent();
-        return new PagedResponse<>(pollResponses, polls.getNumber(),
-                polls.getSize(), polls.getTotalElements(), polls.getTotalPages(), polls.isLast());
-    }
+    @Autowired
+    private PollVoterFilter pollVoterFilter;
 
+    @Autowired
+    private UserStatsCounter userStatsCounter;
 
-    public PagedResponse<PollResponse> getPollsCreatedBy(String username, UserPrincipal currentUser, int page, int size){
-        validatePageNumberAndSize(page, size);
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
 
-        User user = userRepository.findByUsername(username).orElseThrow(()-> new ResourceNotFoundException("User", "username", username));
+    @Autowired
+    private MeterRegistry meterRegistry;
 
-        //Retrieve all polls created by a given username
-        Pageable pageable = PageRequest.of(page, size, Sort.Direction.DESC, "createdAt");
-        Page<Poll> polls = pollRepository.findByCreatedAtBy(user.getId(), pageable);
+    private static final Logger logger = LoggerFactory.getLogger(PollService.class);
 
-        if(polls.getNumberOfElements() == 0){
-            return new PagedResponse<>(Collections.emptyList(), polls.getNumber(),
-                    polls.getSize(), polls.getTotalElements(),polls.getTotalPages(), polls.isLast());
-        }
+    // filtered: the voter filter rules the vote out without a query; queried: it could not, so the votes were looked up
+    private Timer duplicateCheckFiltered;
+    private Timer duplicateCheckQueried;
+    private Timer duplicateCheckRejected;
+    private Counter duplicatesFoundByLookup;
+    private Counter duplicatesFoundByConstraint;
+
+    @PostConstruct
+    void init(){
+        duplicateCheckFiltered = meterRegistry.timer("votes.duplicate.check", "outcome", "filtered");
+        duplicateCheckQueried = meterRegistry.timer("votes.duplicate.check", "outcome", "queried");
+        duplicateCheckRejected = meterRegistry.timer("votes.duplicate.check", "outcome", "rejected");
+        duplicatesFoundByLookup = meterRegistry.counter("votes.duplicate.rejected", "check", "lookup");
+        duplicatesFoundByConstraint = meterRegistry.counter("votes.duplicate.rejected", "check", "constraint");
+    }
 
-        List<Long> pollIds = polls.map(Poll::getId).getContent();
-        Map<Long, Long> choiceVotCountMap = getChoiceVoteCountMap(pollIds);
-        Map<Long, Long> pollUserVoteMap = getPollUserVoteMap(currentUser, pollIds);
+    @Timed("polls.service")
+    public PagedResponse<PollResponse> getAllPolls(UserPrincipal currentUser, int page, int size){
+        validatePageNumberAndSize(page, size);
+        Long viewerId = getViewerId(currentUser);
+        return getFeedPage(pollRepository.count(), page, size,
+                (offset, limit) -> pollRepository.findFeedRows(null, viewerId, null, offset, limit));
+    }
+
+
+    @Timed("polls.service")
+    public PagedResponse<PollResponse> getPollsCreatedBy(String username, UserPrincipal currentUser, int page, int size){
+        validatePageNumberAndSize(page, size);
 
-        List<PollResponse> pollResponses = polls.map(poll -> ModelMapper.mapPollToPollResponse(
-                poll,
-                choiceVotCountMap,
-                user,
-                pollUserVoteMap == null ? null : pollUserVoteMap.getOrDefault(poll.getId(), null))).getContent();
-        return new PagedResponse<>(pollResponses,polls.getNumber(), polls.getSize(),
-                polls.getTotalElements(), polls.getTotalPages(), polls.isLast());
+        User user = userRepository.findByUsername(username).orElseThrow(()-> new ResourceNotFoundException("User", "username", username));
+        Long viewerId = getViewerId(currentUser);
+        return getFeedPage(pollRepository.countByCreatedBy(user.getId()), page, size,
+                (offset, limit) -> pollRepository.findFeedRows(user.getId(), viewerId, null, offset, limit));
     }
 
+    @Timed("polls.service")
     public PagedResponse<PollResponse> getPollsVotedBy(String username, UserPrincipal currentUser, int page, int size){
         validatePageNumberAndSize(page, size);
         User user = userRepository.findByUsername(username).orElseThrow(()->new ResourceNotFoundException("User", "username", username));
+        Long viewerId = getViewerId(currentUser);
+        return getFeedPage(voteRepository.countByUserId(user.getId()), page, size,
+                (offset, limit) -> pollRepository.findVotedFeedRows(user.getId(), viewerId, null, offset, limit));
+    }
 
-        Pageable pageable = PageRequest.of(page, size, Sort.Direction.DESC, "createdAt");
-        Page<Long> userVotedPollIds = voteRepository.findVotedPollIdsByUserId(user.getId(), pageable);
-
-        if(userVotedPollIds.getNumberOfElements() == 0){
-            return new PagedResponse<>(Collections.emptyList(), userVotedPollIds.getNumber(), userVotedPollIds.getSize(),
-                    userVotedPollIds.getTotalElements(), userVotedPollIds.getTotalPages(), userVotedPollIds.isLast());
-        }
-
-        List<Long> pollIds = userVotedPollIds.getContent();
-        Sort sort = new Sort(Sort.Direction.DESC, "createdAt");
-        List<Poll> polls = pollRepository.findByIdIn(pollIds, sort);
-
-        Map<Long, Long> choiceVotCountMap = getChoiceVoteCountMap(pollIds);
-        Map<Long, Long> pollUserVoteMap = getPollUserVoteMap(currentUser, pollIds);
-        Map<String, User> creatorMap = getPollCreatorMap(polls);
+    @Timed("polls.service")
+    public CursorPagedResponse<PollResponse> getAllPolls(UserPrincipal currentUser, String after, int size){
+        validatePageSize(size);
+        return getFeedCursorPage(pollRepository.findFeedRows(null, getViewerId(currentUser), decodeCursor(after), 0, size + 1), size);
+    }
 
-        List<PollResponse> pollResponses = polls.stream().map(poll -> ModelMapper.mapPollToPollResponse(
-                poll, choiceVotCountMap, creatorMap.get(poll.getCreatedBy()),
-                pollUserVoteMap == null ? null : pollUserVoteMap.getOrDefault(poll.getId(), null)
-        )).collect(Collectors.toList());
+    @Timed("polls.service")
+    public CursorPagedResponse<PollResponse> getPollsCreatedBy(String username, UserPrincipal currentUser, String after, int size){
+        validatePageSize(size);
+        User user = userRepository.findByUsername(username).orElseThrow(()-> new ResourceNotFoundException("User", "username", username));
+        return getFeedCursorPage(pollRepository.findFeedRows(user.getId(), getViewerId(currentUser), decodeCursor(after), 0, size + 1), size);
+    }
 
-        return new PagedResponse<>(pollResponses, userVotedPollIds.getNumber(), userVotedPollIds.getSize(),
-                userVotedPollIds.getTotalElements(), userVotedPollIds.getTotalPages(), userVotedPollIds.isLast());
+    @Timed("polls.service")
+    public CursorPagedResponse<PollResponse> getPollsVotedBy(String username, UserPrincipal currentUser, String after, int size){
+        validatePageSize(size);
+        User user = userRepository.findByUsername(username).orElseThrow(()->new ResourceNotFoundException("User", "username", username));
+        return getFeedCursorPage(pollRepository.findVotedFeedRows(user.getId(), getViewerId(currentUser), decodeCursor(after), 0, size + 1), size);
     }
 
+    @Timed("polls.service")
+    @Transactional
     public Poll createPoll(PollRequest pollRequest){
         Poll poll = new Poll();
         poll.setQuestion(pollRequest.getQuestion());
@@ -136,93 +150,174 @@ public class PollService {
         Instant expirationDateTime = now.plus(Duration.ofDays(pollRequest.getPollLength().getDays()))
                 .plus(Duration.ofHours(pollRequest.getPollLength().getHours()));
         poll.setExpirationDateTime(expirationDateTime);
-        return pollRepository.save(poll);
+        Poll savedPoll = pollRepository.save(poll);
+        userStatsCounter.recordPoll(savedPoll.getCreatedBy());
+        eventPublisher.publishEvent(new PollCreatedEvent(savedPoll.getId(), expirationDateTime));
+        return savedPoll;
     }
 
+    @Timed("polls.service")
     public PollResponse getPollById(Long pollId, UserPrincipal currentUser){
         Poll poll = pollRepository.findById(pollId).orElseThrow(()->new ResourceNotFoundException("Poll", "id", pollId));
 
-        List<ChoiceVoteCount> votes = voteRepository.countByPollIdGroupByChoiceId(pollId);
-
-        Map<Long, Long> choiceVotesMap = votes.stream().collect(
-                Collectors.toMap(ChoiceVoteCount::getChoiceId, ChoiceVoteCount::getVoteCount)
-        );
+        Map<Long, Long> choiceVotesMap = voteTallyCache.getChoiceVotesMap(poll);
 
         User creator = userRepository.findById(poll.getCreatedBy()).orElseThrow(()->new ResourceNotFoundException("User", "id", poll.getCreatedBy()));
 
-        Vote userVote = null;
-        if(currentUser != null){
-            userVote = voteRepository.findByUserIdAndPollId(currentUser.getId(),pollId);
+        PollResponse pollResponse = ModelMapper.mapPollToPollResponse(poll, choiceVotesMap, creator, null);
+        if(poll.isClosed()){
+            expiredPollCache.freeze(pollResponse);
         }
 
-        return ModelMapper.mapPollToPollResponse(poll, choiceVotesMap, creator,
-                userVote != null ? userVote.getChoice().getId() : null);
+        if(currentUser != null){
+            pollResponse.setSelectedChoice(voteRepository.findChoiceIdByUserIdAndPollId(currentUser.getId(), pollId));
+        }
+        return pollResponse;
     }
 
+    @Timed("polls.service")
+    @Transactional
     public PollResponse castVoteAndGetUpdatedPoll(Long pollId, VoteRequest voteRequest, UserPrincipal currentUser){
-        Poll poll = pollRepository.findById(pollId).orElseThrow(()->new ResourceNotFoundException("Poll", "id", pollId));
-
-        if(poll.getExpirationDateTime().isBefore(Instant.now())){
-            throw new BadRequestException("Sorry! This Poll has already expired");
-        }
+        Poll poll = getVotablePoll(pollId);
 
         User user = userRepository.getOne(currentUser.getId());
 
-        Choice selectedChoice = poll.getChoices().stream().filter(choice -> choice.getId().equals(voteRequest.getChoiceId()))
-                .findFirst()
-                .orElseThrow(()->new ResourceNotFoundException("Choice", "id", voteRequest.getChoiceId()));
+        Choice selectedChoice = getSelectedChoice(poll, voteRequest);
+        rejectIfAlreadyVoted(pollId, currentUser);
+
         Vote vote = new Vote();
         vote.setPoll(poll);
         vote.setUser(user);
         vote.setChoice(selectedChoice);
 
+        VoteTallyCache.VoteTally tally = voteTallyCache.getIfPresent(pollId);
         try{
-            vote = voteRepository.save(vote);
+            vote = voteRepository.saveAndFlush(vote);
         }catch (DataIntegrityViolationException ex){
+            duplicatesFoundByConstraint.increment();
             logger.info("User {} has already voted in poll {}", currentUser.getId(), pollId);
             throw  new BadRequestException("Sorry! You have already casted your vote in this poll");
         }
-
-        List<ChoiceVoteCount> votes = voteRepository.countByPollIdGroupByChoiceId(pollId);
-        Map<Long, Long> choiceVotesMap = votes.stream()
-                .collect(Collectors.toMap(ChoiceVoteCount::getChoiceId, ChoiceVoteCount::getVoteCount));
+        pollVoterFilter.recordVote(pollId, currentUser.getId());
+        choiceVoteCounter.increment(poll, selectedChoice);
+        voteTallyCache.recordVote(pollId, tally, selectedChoice.getId());
+        userStatsCounter.recordVote(currentUser.getId(), poll.getCreatedBy());
+        eventPublisher.publishEvent(new VoteCastEvent(pollId, selectedChoice.getId()));
+
+        // The tally only takes the vote once the transaction commits
+        Map<Long, Long> choiceVotesMap;
+        if(tally != null){
+            choiceVotesMap = tally.snapshot();
+            choiceVotesMap.merge(selectedChoice.getId(), 1L, Long::sum);
+        }else{
+            choiceVotesMap = choiceVoteCounter.getChoiceVotesMap(Collections.singletonList(poll));
+            if(!poll.isCounterSharded()){
+                choiceVotesMap.merge(selectedChoice.getId(), 1L, Long::sum);
+            }
+        }
 
         User creator = userRepository.findById(poll.getCreatedBy())
                 .orElseThrow(()->new ResourceNotFoundException("User", "id", poll.getCreatedBy()));
         return ModelMapper.mapPollToPollResponse(poll, choiceVotesMap,creator,vote.getChoice().getId());
     }
 
-    private Map<Long, Long> getPollUserVoteMap(UserPrincipal currentUser, List<Long> pollIds) {
-        Map<Long, Long> pollUserVoteMap = null;
-        if(currentUser != null){
-            List<Vote> userVotes = voteRepository.findByUserIdAndPollIdIn(currentUser.getId(), pollIds);
-            pollUserVoteMap = userVotes.stream()
-                    .collect(Collectors.toMap(vote -> vote.getPoll().getId(), vote->vote.getChoice().getId()));
+    @Timed("polls.service")
+    public VoteReceipt submitVote(Long pollId, VoteRequest voteRequest, UserPrincipal currentUser){
+        Poll poll = getVotablePoll(pollId);
+        Choice selectedChoice = getSelectedChoice(poll, voteRequest);
+        rejectIfAlreadyVoted(pollId, currentUser);
+
+        VoteReceipt receipt = voteIngestionService.submit(pollId, selectedChoice.getId(), poll.getCounterShards(),
+                poll.getCreatedBy(), currentUser.getId());
+        pollVoterFilter.recordVote(pollId, currentUser.getId());
+        return receipt;
+    }
+
+    @Timed("polls.service")
+    public VoteReceipt getVoteReceipt(Long pollId, String ticket){
+        VoteReceipt receipt = voteIngestionService.getReceipt(ticket);
+        if(receipt == null || !receipt.getPollId().equals(pollId)){
+            throw new ResourceNotFoundException("Vote", "ticket", ticket);
         }
-        return pollUserVoteMap;
+        return receipt;
     }
 
-    private Map<String, User> getPollCreatorMap(List<Poll> polls) {
-        List<String> creatorIds = polls.stream().map(Poll::getCreatedBy)
-                .distinct().collect(Collectors.toList());
-        List<User> creators = userRepository.findByIdIn(creatorIds);
-        return creators.stream().collect(Collectors.toMap(User::getId, Function.identity()));
+    private Poll getVotablePoll(Long pollId){
+        Poll poll = pollRepository.findById(pollId).orElseThrow(()->new ResourceNotFoundException("Poll", "id", pollId));
+
+        if(poll.isClosed() || poll.getExpirationDateTime().isBefore(Instant.now())){
+            throw new BadRequestException("Sorry! This Poll has already expired");
+        }
+        return poll;
     }
 
-    private Map<Long, Long> getChoiceVoteCountMap(List<Long> pollIds) {
-        List<ChoiceVoteCount> votes = voteRepository.countByPollIdInGroupByChoiceId(pollIds);
-        return votes.stream()
-                .collect(Collectors.toMap(ChoiceVoteCount::getChoiceId, ChoiceVoteCount::getVoteCount));
+    private void rejectIfAlreadyVoted(Long pollId, UserPrincipal currentUser){
+        long start = System.nanoTime();
+        if(!pollVoterFilter.mightHaveVoted(pollId, currentUser.getId())){
+            duplicateCheckFiltered.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return;
+        }
+        if(voteRepository.findByUserIdAndPollId(currentUser.getId(), pollId) == null){
+            duplicateCheckQueried.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return;
+        }
+        duplicateCheckRejected.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        duplicatesFoundByLookup.increment();
+        logger.info("User {} has already voted in poll {}", currentUser.getId(), pollId);
+        throw new BadRequestException("Sorry! You have already casted your vote in this poll");
+    }
+
+    private Choice getSelectedChoice(Poll poll, VoteRequest voteRequest){
+        return poll.getChoices().stream().filter(choice -> choice.getId().equals(voteRequest.getChoiceId()))
+                .findFirst()
+                .orElseThrow(()->new ResourceNotFoundException("Choice", "id", voteRequest.getChoiceId()));
+    }
+
+    private PagedResponse<PollResponse> getFeedPage(long totalElements, int page, int size,
+                                                    BiFunction<Long, Integer, List<PollFeedRow>> rows){
+        int totalPages = (int) ((totalElements + size - 1) / size);
+        boolean last = page + 1 >= totalPages;
+        if((long) page * size >= totalElements){
+            return new PagedResponse<>(Collections.emptyList(), page, size, totalElements, totalPages, last);
+        }
+        List<PollResponse> pollResponses = ModelMapper.mapPollFeedRowsToPollResponses(rows.apply((long) page * size, size));
+        return new PagedResponse<>(pollResponses, page, size, totalElements, totalPages, last);
+    }
+
+    /**
+     * Expects the rows of one poll past the page, which tells whether another page follows without a count query.
+     */
+    private CursorPagedResponse<PollResponse> getFeedCursorPage(List<PollFeedRow> rows, int size){
+        List<PollResponse> pollResponses = ModelMapper.mapPollFeedRowsToPollResponses(rows);
+        if(pollResponses.size() <= size){
+            return new CursorPagedResponse<>(pollResponses, size, null, true);
+        }
+        pollResponses = pollResponses.subList(0, size);
+        Long lastPollId = pollResponses.get(size - 1).getId();
+        PollFeedRow lastRow = rows.stream().filter(row -> row.getPollId().equals(lastPollId)).findFirst().get();
+        return new CursorPagedResponse<>(pollResponses, size,
+                new FeedCursor(lastRow.getCursorCreatedAt(), lastRow.getCursorId()).encode(), false);
+    }
+
+    private FeedCursor decodeCursor(String after){
+        return after.isEmpty() ? null : FeedCursor.decode(after);
+    }
+
+    private Long getViewerId(UserPrincipal currentUser){
+        return currentUser == null ? null : currentUser.getId();
+    }
+
+    private void validatePageSize(int size) {
+        if(size < 1 || size > AppConstants.MAX_PAGE_SIZE){
+            throw new BadRequestException("Page size must be between 1 and "+ AppConstants.MAX_PAGE_SIZE);
+        }
     }
 
     private void validatePageNumberAndSize(int page, int size) {
         if(page < 0){
             throw new BadRequestException("Page number cannot be less than zero.");
         }
-
-        if(size > AppConstants.MAX_PAGE_SIZE){
-            throw new BadRequestException("Page size must not be greater than "+ AppConstants.MAX_PAGE_SIZE);
-        }
+        validatePageSize(size);
     }
 
 
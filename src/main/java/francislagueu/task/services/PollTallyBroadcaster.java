@@ -0,0 +1,279 @@
+package francislagueu.task.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import francislagueu.task.exception.ResourceNotFoundException;
+import francislagueu.task.exception.ServiceUnavailableException;
+import francislagueu.task.models.Poll;
+import francislagueu.task.payload.PollTally;
+import francislagueu.task.repositories.PollRepository;
+import francislagueu.task.util.ModelMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Pushes live poll tallies to Server-Sent Events subscribers. Votes only mark their poll as dirty; every
+ * {@code app.pollStreamFlushIntervalInMs} each dirty poll with subscribers has its tally read and serialized
+ * once, and the same JSON is written to all of its subscribers by a small pool of sender threads, so request
+ * threads and vote writers never wait on slow clients. Each subscriber stays on one sender, which writes its
+ * frames in order and drops a tally read before the last one it sent. Votes taken by other instances raise no
+ * event here, so every {@code app.pollStreamRefreshIntervalInMs} the persisted counters of the subscribed open
+ * polls are compared with their cached tallies, and a poll that moved is reloaded and pushed on the next flush.
+ * Heartbeat comments keep idle connections open through proxies and reveal clients that went away.
+ */
+@Component
+public class PollTallyBroadcaster {
+
+    @Autowired
+    private PollRepository pollRepository;
+
+    @Autowired
+    private VoteTallyCache voteTallyCache;
+
+    @Autowired
+    private ChoiceVoteCounter choiceVoteCounter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.pollStreamTimeoutInMs}")
+    private long timeoutInMs;
+
+    @Value("${app.pollStreamMaxSubscribers}")
+    private int maxSubscribers;
+
+    @Value("${app.pollStreamMaxSubscribersPerPoll}")
+    private int maxSubscribersPerPoll;
+
+    @Value("${app.pollStreamSenders}")
+    private int senders;
+
+    private final Map<Long, Set<Subscriber>> subscribersByPoll = new ConcurrentHashMap<>();
+    private final Set<Long> dirtyPolls = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final AtomicInteger nextSender = new AtomicInteger();
+    private final AtomicLong tallySequence = new AtomicLong();
+
+    private ExecutorService[] senderPool;
+    private Counter broadcasts;
+
+    private static final Logger logger = LoggerFactory.getLogger(PollTallyBroadcaster.class);
+
+    @PostConstruct
+    void start(){
+        senderPool = new ExecutorService[senders];
+        for(int i = 0; i < senders; i++){
+            senderPool[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "poll-stream-sender");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        meterRegistry.gauge("polls.stream.subscribers", subscribers);
+        broadcasts = meterRegistry.counter("polls.stream.broadcasts");
+    }
+
+    @PreDestroy
+    void stop(){
+        subscribersByPoll.values().forEach(pollSubscribers -> pollSubscribers.forEach(subscriber -> subscriber.emitter.complete()));
+        for(ExecutorService sender : senderPool){
+            sender.shutdown();
+        }
+    }
+
+    public SseEmitter subscribe(Long pollId){
+        if(subscribers.incrementAndGet() > maxSubscribers){
+            subscribers.decrementAndGet();
+            throw new ServiceUnavailableException("Too many live result subscribers, please retry later");
+        }
+
+        Subscriber subscriber = new Subscriber(new SseEmitter(timeoutInMs), Math.floorMod(nextSender.getAndIncrement(), senders));
+        try{
+            subscribersByPoll.compute(pollId, (id, pollSubscribers) -> {
+                if(pollSubscribers == null){
+                    pollSubscribers = ConcurrentHashMap.newKeySet();
+                }else if(pollSubscribers.size() >= maxSubscribersPerPoll){
+                    throw new ServiceUnavailableException("Too many live result subscribers for this poll, please retry later");
+                }
+                pollSubscribers.add(subscriber);
+                return pollSubscribers;
+            });
+        }catch (ServiceUnavailableException ex){
+            subscribers.decrementAndGet();
+            throw ex;
+        }
+
+        // Read only once registered, so a vote committed in between is either in this tally or flushed to us
+        Tally tally;
+        try{
+            tally = readTally(pollId);
+        }catch (RuntimeException ex){
+            unsubscribe(pollId, subscriber);
+            throw ex;
+        }
+        if(tally == null){
+            unsubscribe(pollId, subscriber);
+            throw new ResourceNotFoundException("Poll", "id", pollId);
+        }
+        Runnable unsubscribe = () -> unsubscribe(pollId, subscriber);
+        subscriber.emitter.onCompletion(unsubscribe);
+        subscriber.emitter.onTimeout(unsubscribe);
+        subscriber.emitter.onError(error -> unsubscribe.run());
+        senderPool[subscriber.sender].execute(() -> sendTally(pollId, subscriber, tally));
+        return subscriber.emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onVoteCast(VoteCastEvent event){
+        if(subscribersByPoll.containsKey(event.getPollId())){
+            dirtyPolls.add(event.getPollId());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.pollStreamFlushIntervalInMs}")
+    public void flush(){
+        for(Iterator<Long> dirty = dirtyPolls.iterator(); dirty.hasNext(); ){
+            Long pollId = dirty.next();
+            dirty.remove();
+            Set<Subscriber> pollSubscribers = subscribersByPoll.get(pollId);
+            if(pollSubscribers == null){
+                continue;
+            }
+            Tally tally = readTally(pollId);
+            if(tally != null){
+                broadcast(pollSubscribers, subscriber -> sendTally(pollId, subscriber, tally));
+                broadcasts.increment();
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.pollStreamRefreshIntervalInMs}")
+    public void refresh(){
+        if(subscribersByPoll.isEmpty()){
+            return;
+        }
+        List<Poll> polls = pollRepository.findAllById(new ArrayList<>(subscribersByPoll.keySet())).stream()
+                .filter(poll -> !poll.isClosed()).collect(Collectors.toList());
+        Map<Long, Long> persisted = choiceVoteCounter.getLiveChoiceVotesMap(polls);
+        for(Poll poll : polls){
+            Map<Long, Long> cached = voteTallyCache.getChoiceVotesMap(poll);
+            boolean moved = poll.getChoices().stream().anyMatch(choice ->
+                    !persisted.getOrDefault(choice.getId(), 0L).equals(cached.getOrDefault(choice.getId(), 0L)));
+            if(moved){
+                voteTallyCache.evict(poll.getId());
+                dirtyPolls.add(poll.getId());
+            }
+        }
+    }
+
+    @Scheduled(fixedRateString = "${app.pollStreamHeartbeatInMs}")
+    public void sendHeartbeats(){
+        subscribersByPoll.forEach((pollId, pollSubscribers) -> broadcast(pollSubscribers,
+                subscriber -> send(pollId, subscriber, SseEmitter.event().comment("heartbeat"))));
+    }
+
+    private Tally readTally(Long pollId){
+        long sequence = tallySequence.incrementAndGet();
+        Poll poll = pollRepository.findById(pollId).orElse(null);
+        if(poll == null){
+            return null;
+        }
+        PollTally tally = ModelMapper.mapPollToPollTally(poll, voteTallyCache.getChoiceVotesMap(poll));
+        try{
+            return new Tally(sequence, objectMapper.writeValueAsString(tally));
+        }catch (JsonProcessingException ex){
+            throw new IllegalStateException("Could not serialize tally of poll " + pollId, ex);
+        }
+    }
+
+    private void broadcast(Set<Subscriber> pollSubscribers, Consumer<Subscriber> send){
+        List<List<Subscriber>> bySender = new ArrayList<>(senders);
+        for(int i = 0; i < senders; i++){
+            bySender.add(new ArrayList<>());
+        }
+        pollSubscribers.forEach(subscriber -> bySender.get(subscriber.sender).add(subscriber));
+        for(int i = 0; i < senders; i++){
+            List<Subscriber> targets = bySender.get(i);
+            if(!targets.isEmpty()){
+                senderPool[i].execute(() -> targets.forEach(send));
+            }
+        }
+    }
+
+    // Only ever runs on the subscriber's sender thread
+    private void sendTally(Long pollId, Subscriber subscriber, Tally tally){
+        if(tally.sequence <= subscriber.lastTallySequence){
+            return;
+        }
+        subscriber.lastTallySequence = tally.sequence;
+        send(pollId, subscriber, SseEmitter.event().name("tally").data(tally.json, MediaType.APPLICATION_JSON_UTF8));
+    }
+
+    private void send(Long pollId, Subscriber subscriber, SseEmitter.SseEventBuilder event){
+        try{
+            subscriber.emitter.send(event);
+        }catch (IOException | IllegalStateException ex){
+            logger.debug("Dropping live result subscriber of poll {}", pollId, ex);
+            unsubscribe(pollId, subscriber);
+            subscriber.emitter.completeWithError(ex);
+        }
+    }
+
+    private void unsubscribe(Long pollId, Subscriber subscriber){
+        subscribersByPoll.computeIfPresent(pollId, (id, pollSubscribers) -> {
+            if(pollSubscribers.remove(subscriber)){
+                subscribers.decrementAndGet();
+            }
+            return pollSubscribers.isEmpty() ? null : pollSubscribers;
+        });
+    }
+
+    private static class Tally {
+        private final long sequence;
+        private final String json;
+
+        Tally(long sequence, String json) {
+            this.sequence = sequence;
+            this.json = json;
+        }
+    }
+
+    private static class Subscriber {
+        private final SseEmitter emitter;
+        private final int sender;
+        private long lastTallySequence;
+
+        Subscriber(SseEmitter emitter, int sender) {
+            this.emitter = emitter;
+            this.sender = sender;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package francislagueu.task.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory version numbers behind the poll and feed ETags. A poll's version advances, after commit, on every
+ * vote and on creation, and when the expiry scheduler sees it expire; the feed version advances with any of
+ * them. Versions are drawn from one sequence and prefixed by the boot time, so a number that was forgotten
+ * (evicted, or lost in a restart) is never handed out again and only costs a full response. Versions live in
+ * this process only and never see votes or polls taken by other instances, so every ETag also carries the current
+ * {@code app.pollETagMaxStaleInMs} time bucket, which bounds how long such a change can be answered with a 304.
+ */
+@Component
+public class PollVersions {
+
+    @Value("${app.pollVersionsMaxPolls}")
+    private long maxPolls;
+
+    @Value("${app.pollETagMaxStaleInMs}")
+    private long maxStaleInMs;
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong feedVersion = new AtomicLong();
+
+    private Cache<Long, Long> versions;
+
+    @PostConstruct
+    void init(){
+        versions = Caffeine.newBuilder()
+                .maximumSize(maxPolls)
+                .build();
+    }
+
+    public String getPollETag(Long pollId, Long viewerId, boolean gzip){
+        return eTag(versions.get(pollId, id -> sequence.incrementAndGet()), viewerId, gzip);
+    }
+
+    public String getFeedETag(Long viewerId){
+        return eTag(feedVersion.get(), viewerId, false);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onVoteCast(VoteCastEvent event){
+        advance(event.getPollId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPollCreated(PollCreatedEvent event){
+        advance(event.getPollId());
+    }
+
+    // Responses carry isExpired, so expiring changes them as much as a vote does
+    public void onPollExpired(Long pollId){
+        advance(pollId);
+    }
+
+    public void advanceAll(){
+        versions.invalidateAll();
+        feedVersion.accumulateAndGet(sequence.incrementAndGet(), Math::max);
+    }
+
+    private void advance(Long pollId){
+        long version = sequence.incrementAndGet();
+        versions.put(pollId, version);
+        feedVersion.accumulateAndGet(version, Math::max);
+    }
+
+    private String eTag(long version, Long viewerId, boolean gzip){
+        long bucket = System.currentTimeMillis() / maxStaleInMs;
+        return "\"" + epoch + "-" + Long.toString(bucket, 36) + "-" + Long.toString(version, 36) + "-" + (viewerId != null ? Long.toString(viewerId, 36) : "0")
+                + (gzip ? "-gz" : "") + "\"";
+    }
+}
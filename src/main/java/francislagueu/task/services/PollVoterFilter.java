@@ -0,0 +1,138 @@
+package francislagueu.task.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import francislagueu.task.repositories.VoteRepository;
+import francislagueu.task.util.BloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Per-poll Bloom filter of the users who voted, built lazily from the votes table. A negative answer means the
+ * user has certainly not voted yet, so only possible duplicates pay for a lookup before the insert. The unique
+ * (poll_id, user_id) constraint stays the final word for votes that race with a filter being built.
+ * <p>
+ * Building a filter streams every voter of the poll, so it never happens on the caller's thread. A poll without
+ * a filter answers "maybe" and callers fall back to their indexed lookup, while the filter is built on a single
+ * background thread with room for {@code app.voterFilterBuildQueueCapacity} pending polls.
+ */
+@Component
+public class PollVoterFilter {
+
+    private static final int MIN_EXPECTED_VOTERS = 1024;
+
+    @Autowired
+    private VoteRepository voteRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.voterFilterMaxPolls}")
+    private long maxPolls;
+
+    @Value("${app.voterFilterIdleInMs}")
+    private long idleInMs;
+
+    @Value("${app.voterFilterFalsePositiveRate}")
+    private double falsePositiveRate;
+
+    @Value("${app.voterFilterBuildQueueCapacity}")
+    private int buildQueueCapacity;
+
+    private Cache<Long, BloomFilter> filters;
+    private TransactionTemplate readTransaction;
+    private ThreadPoolExecutor builder;
+
+    private final Set<Long> buildingPolls = ConcurrentHashMap.newKeySet();
+
+    private static final Logger logger = LoggerFactory.getLogger(PollVoterFilter.class);
+
+    @PostConstruct
+    void init(){
+        filters = Caffeine.newBuilder()
+                .maximumSize(maxPolls)
+                .expireAfterAccess(Duration.ofMillis(idleInMs))
+                .build();
+        readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setReadOnly(true);
+        builder = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(buildQueueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "voter-filter-builder");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void stop(){
+        builder.shutdownNow();
+    }
+
+    public boolean mightHaveVoted(Long pollId, Long userId){
+        BloomFilter filter = filters.getIfPresent(pollId);
+        if(filter == null){
+            requestBuild(pollId);
+            return true;
+        }
+        return filter.mightContain(userId);
+    }
+
+    public void recordVote(Long pollId, Long userId){
+        BloomFilter filter = filters.getIfPresent(pollId);
+        if(filter == null){
+            return;
+        }
+        filter.put(userId);
+        if(filter.isSaturated()){
+            filters.invalidate(pollId);
+        }
+    }
+
+    private void requestBuild(Long pollId){
+        if(!buildingPolls.add(pollId)){
+            return;
+        }
+        try{
+            builder.execute(() -> build(pollId));
+        }catch (RejectedExecutionException ex){
+            buildingPolls.remove(pollId);
+        }
+    }
+
+    private void build(Long pollId){
+        try{
+            filters.put(pollId, load(pollId));
+        }catch (RuntimeException ex){
+            logger.error("Could not build the voter filter of poll {}", pollId, ex);
+        }finally {
+            buildingPolls.remove(pollId);
+        }
+    }
+
+    private BloomFilter load(Long pollId){
+        return readTransaction.execute(status -> {
+            long voters = voteRepository.countByPollId(pollId);
+            BloomFilter filter = new BloomFilter(Math.max(MIN_EXPECTED_VOTERS, voters * 2), falsePositiveRate);
+            try(Stream<Long> userIds = voteRepository.streamUserIdsByPollId(pollId)){
+                userIds.forEach(filter::put);
+            }
+            return filter;
+        });
+    }
+}
@@ -0,0 +1,176 @@
+package francislagueu.task.services;
+
+import francislagueu.task.models.UserIdentity;
+import francislagueu.task.repositories.UserRepository;
+import francislagueu.task.util.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+
+/**
+ * Bloom filters over every username and email, so the availability checks behind the signup form only query
+ * user_entity for names that might be taken. Built at startup by streaming the table, fed on registration and
+ * rebuilt every {@code app.userIdentityFilterRebuildIntervalInMs}, sized for twice the current users so the
+ * false positive rate holds as signups come in. Registrations made while a rebuild streams go into both filters.
+ * Registrations on other instances only reach the filters with the next rebuild, so until then their names read
+ * as available; if no rebuild has succeeded within {@code app.userIdentityFilterMaxAgeInMs} every check goes to
+ * the database instead. Availability is advisory; the unique constraints on user_entity still decide registrations.
+ */
+@Component
+public class UserIdentityFilter {
+
+    private static final long MIN_EXPECTED_USERS = 10_000;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.userIdentityFilterFalsePositiveRate}")
+    private double falsePositiveRate;
+
+    @Value("${app.userIdentityFilterMaxAgeInMs}")
+    private long maxAgeInMs;
+
+    private TransactionTemplate readTransaction;
+    private volatile Filters current;
+    private volatile Filters building;
+    private Counter usernameQueries;
+    private Counter usernameFalsePositives;
+    private Counter emailQueries;
+    private Counter emailFalsePositives;
+
+    private static final Logger logger = LoggerFactory.getLogger(UserIdentityFilter.class);
+
+    @PostConstruct
+    void init(){
+        readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setReadOnly(true);
+        usernameQueries = meterRegistry.counter("users.identity.filter.queries", "filter", "username");
+        usernameFalsePositives = meterRegistry.counter("users.identity.filter.false.positives", "filter", "username");
+        emailQueries = meterRegistry.counter("users.identity.filter.queries", "filter", "email");
+        emailFalsePositives = meterRegistry.counter("users.identity.filter.false.positives", "filter", "email");
+        registerGauges("username", filters -> filters.usernames);
+        registerGauges("email", filters -> filters.emails);
+        rebuild();
+    }
+
+    public boolean usernameExists(String username){
+        Filters filters = usableFilters();
+        if(filters == null){
+            return userRepository.existsByUsername(username);
+        }
+        if(!filters.usernames.mightContain(username)){
+            return false;
+        }
+        return query(username, userRepository::existsByUsername, usernameQueries, usernameFalsePositives);
+    }
+
+    public boolean emailExists(String email){
+        Filters filters = usableFilters();
+        if(filters == null){
+            return userRepository.existsByEmail(email);
+        }
+        if(!filters.emails.mightContain(email)){
+            return false;
+        }
+        return query(email, userRepository::existsByEmail, emailQueries, emailFalsePositives);
+    }
+
+    public void recordRegistration(String username, String email){
+        // Read in the reverse order rebuild() publishes them, so a rebuild finishing meanwhile is never missed
+        Filters next = building;
+        if(next != null){
+            next.put(username, email);
+        }
+        Filters filters = current;
+        if(filters != null && filters != next){
+            filters.put(username, email);
+        }
+    }
+
+    @Scheduled(initialDelayString = "${app.userIdentityFilterRebuildIntervalInMs}", fixedDelayString = "${app.userIdentityFilterRebuildIntervalInMs}")
+    public void rebuild(){
+        long startedAt = System.currentTimeMillis();
+        Filters next = new Filters(Math.max(MIN_EXPECTED_USERS, userRepository.count() * 2), falsePositiveRate, startedAt);
+        building = next;
+        try{
+            readTransaction.execute(status -> {
+                try(Stream<UserIdentity> identities = userRepository.streamIdentities()){
+                    identities.forEach(identity -> next.put(identity.getUsername(), identity.getEmail()));
+                }
+                return null;
+            });
+            current = next;
+        }finally {
+            building = null;
+        }
+        logger.info("Built username and email filters over {} users in {} ms",
+                next.usernames.getInsertions(), System.currentTimeMillis() - startedAt);
+    }
+
+    // A filter holds every user committed before its rebuild started, plus the ones registered here since
+    private Filters usableFilters(){
+        Filters filters = current;
+        if(filters == null || System.currentTimeMillis() - filters.builtFrom > maxAgeInMs){
+            return null;
+        }
+        return filters;
+    }
+
+    private boolean query(String value, Predicate<String> exists, Counter queries, Counter falsePositives){
+        queries.increment();
+        boolean found = exists.test(value);
+        if(!found){
+            falsePositives.increment();
+        }
+        return found;
+    }
+
+    private void registerGauges(String name, Function<Filters, BloomFilter> filter){
+        gauge("users.identity.filter.fill.ratio", name, filters -> filter.apply(filters).getFillRatio());
+        gauge("users.identity.filter.false.positive.rate", name, filters -> filter.apply(filters).getExpectedFalsePositiveRate());
+        gauge("users.identity.filter.insertions", name, filters -> filter.apply(filters).getInsertions());
+    }
+
+    private void gauge(String meter, String name, ToDoubleFunction<Filters> value){
+        Gauge.builder(meter, this, filter -> filter.current == null ? Double.NaN : value.applyAsDouble(filter.current))
+                .tag("filter", name)
+                .register(meterRegistry);
+    }
+
+    private static class Filters {
+        private final BloomFilter usernames;
+        private final BloomFilter emails;
+        private final long builtFrom;
+
+        Filters(long expectedUsers, double falsePositiveRate, long builtFrom) {
+            this.usernames = new BloomFilter(expectedUsers, falsePositiveRate);
+            this.emails = new BloomFilter(expectedUsers, falsePositiveRate);
+            this.builtFrom = builtFrom;
+        }
+
+        void put(String username, String email){
+            usernames.put(username);
+            emails.put(email);
+        }
+    }
+}
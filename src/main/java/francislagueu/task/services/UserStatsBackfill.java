@@ -0,0 +1,115 @@
+package francislagueu.task.services;
+
+import francislagueu.task.models.UserStatsCheck;
+import francislagueu.task.repositories.UserRepository;
+import francislagueu.task.repositories.UserStatsRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates the user_stats row, counted from polls and votes, of every user that does not have one yet: users
+ * registered before the table existed, or whose row could not be written at registration. Walks user ids in
+ * ranges of {@code app.userStatsBackfillChunkSize}, one statement and transaction per range. The first two runs
+ * cover every user; later runs start from the highest user id seen two runs back, by which time registrations
+ * below it have settled.
+ *
+ * <p>Each run then walks every row in chunks of {@code app.userStatsReconcileChunkSize} and repairs poll and vote
+ * counts that no longer match polls and votes, such as a row inserted while votes for that user were being
+ * committed. Like {@link VoteCountReconciler}, stored and actual counts are read in one statement and repairs are
+ * applied as deltas, so counters that {@link UserStatsCounter} moves concurrently never show up as drift. Votes
+ * received are folded again from the vote counters for every row in the chunk.
+ */
+@Component
+public class UserStatsBackfill {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserStatsRepository userStatsRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.userStatsBackfillChunkSize}")
+    private long chunkSize;
+
+    @Value("${app.userStatsReconcileChunkSize}")
+    private int reconcileChunkSize;
+
+    private Counter backfilledUsers;
+    private Counter driftedUsers;
+    private long checkedUpToId;
+    private long lastMaxUserId;
+
+    private static final Logger logger = LoggerFactory.getLogger(UserStatsBackfill.class);
+
+    @PostConstruct
+    void init(){
+        backfilledUsers = meterRegistry.counter("users.stats.backfilled");
+        driftedUsers = meterRegistry.counter("users.stats.drifted");
+    }
+
+    @Scheduled(initialDelayString = "${app.userStatsBackfillDelayInMs}", fixedDelayString = "${app.userStatsBackfillIntervalInMs}")
+    public void backfill(){
+        Long maxUserId = userRepository.findMaxId();
+        if(maxUserId == null){
+            return;
+        }
+        long backfilled = 0;
+        for(long afterId = checkedUpToId; afterId < maxUserId; afterId += chunkSize){
+            backfilled += backfill(afterId, Math.min(afterId + chunkSize, maxUserId));
+        }
+        checkedUpToId = lastMaxUserId;
+        lastMaxUserId = maxUserId;
+        backfilledUsers.increment(backfilled);
+        if(backfilled > 0){
+            logger.info("Backfilled activity counters of {} users", backfilled);
+        }
+        reconcile();
+    }
+
+    private void reconcile(){
+        long afterId = 0;
+        List<UserStatsCheck> chunk;
+        do{
+            chunk = userStatsRepository.checkAfter(afterId, PageRequest.of(0, reconcileChunkSize));
+            List<Long> userIds = new ArrayList<>(chunk.size());
+            for(UserStatsCheck check : chunk){
+                if(check.hasDrift()){
+                    logger.warn("Activity counters of user {} drifted by {} polls and {} votes, repairing",
+                            check.getUserId(), check.getPollCountDrift(), check.getVoteCountDrift());
+                    userStatsRepository.adjust(check.getUserId(), check.getPollCountDrift(), check.getVoteCountDrift());
+                    driftedUsers.increment();
+                }
+                userIds.add(check.getUserId());
+                afterId = check.getUserId();
+            }
+            if(!userIds.isEmpty()){
+                userStatsRepository.foldVotesReceived(userIds);
+            }
+        }while(chunk.size() == reconcileChunkSize);
+    }
+
+    private int backfill(long afterId, long upToId){
+        try{
+            return userStatsRepository.backfill(afterId, upToId);
+        }catch (DataIntegrityViolationException ex){
+            // A user registering meanwhile wrote its row first; the retry no longer selects that user
+            logger.debug("User stats backfill of ids ({}, {}] raced a registration, retrying", afterId, upToId, ex);
+            return userStatsRepository.backfill(afterId, upToId);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package francislagueu.task.services;
+
+import francislagueu.task.repositories.UserStatsRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the user_stats counters behind the profile page. Poll counts and vote counts are bumped in the
+ * transaction that creates the poll or vote, so a committed vote is always counted exactly once and
+ * {@link UserStatsBackfill} can compare the rows against polls and votes in a single statement. Users without a
+ * row yet are skipped here and counted from scratch by the backfill.
+ * <p>
+ * Votes received are not touched by the vote: every voter of a viral poll would otherwise queue on its creator's
+ * row. Creators whose polls took votes are remembered once the vote commits, and every
+ * {@code app.userStatsVotesReceivedIntervalInMs} their votes_received is set to the sum of the per-choice counters
+ * of their polls, shards included. The value is recomputed rather than added to, so a creator forgotten in a crash
+ * is only stale until the next vote on their polls or the next backfill run.
+ */
+@Component
+public class UserStatsCounter {
+
+    private static final String ADD_VOTES = "UPDATE user_stats SET vote_count = vote_count + ? WHERE user_id = ?";
+
+    @Autowired
+    private UserStatsRepository userStatsRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.userStatsReconcileChunkSize}")
+    private int chunkSize;
+
+    private final Set<Long> votedPollCreators = ConcurrentHashMap.newKeySet();
+
+    private static final Logger logger = LoggerFactory.getLogger(UserStatsCounter.class);
+
+    public void recordPoll(Long creatorId){
+        userStatsRepository.incrementPollCount(creatorId);
+    }
+
+    public void recordVote(Long voterId, Long pollCreatorId){
+        userStatsRepository.incrementVoteCount(voterId);
+        recordVotesReceived(pollCreatorId);
+    }
+
+    /**
+     * Batch counterpart of {@link #recordVote}, given as vote counts by voter and the creators of the polls voted
+     * in. Each voter's row is updated once, in user id order.
+     */
+    public void recordVotes(Map<Long, Long> votesByVoter, Collection<Long> pollCreatorIds){
+        List<Object[]> batchArgs = new ArrayList<>(votesByVoter.size());
+        new TreeMap<>(votesByVoter).forEach((voterId, votes) -> batchArgs.add(new Object[]{votes, voterId}));
+        jdbcTemplate.batchUpdate(ADD_VOTES, batchArgs);
+        pollCreatorIds.forEach(this::recordVotesReceived);
+    }
+
+    @Scheduled(fixedDelayString = "${app.userStatsVotesReceivedIntervalInMs}")
+    public void foldVotesReceived(){
+        if(votedPollCreators.isEmpty()){
+            return;
+        }
+        Set<Long> creatorIds = new TreeSet<>();
+        for(Long creatorId : votedPollCreators){
+            votedPollCreators.remove(creatorId);
+            creatorIds.add(creatorId);
+        }
+        try{
+            foldVotesReceived(creatorIds);
+        }catch (RuntimeException ex){
+            logger.error("Could not update the votes received by {} users, retrying", creatorIds.size(), ex);
+            votedPollCreators.addAll(creatorIds);
+        }
+    }
+
+    /**
+     * Sets votes_received of the given users from the vote counters of their polls, in chunks of
+     * {@code app.userStatsReconcileChunkSize} users and in user id order.
+     */
+    public void foldVotesReceived(Collection<Long> userIds){
+        List<Long> chunk = new ArrayList<>(chunkSize);
+        for(Long userId : new TreeSet<>(userIds)){
+            chunk.add(userId);
+            if(chunk.size() == chunkSize){
+                userStatsRepository.foldVotesReceived(chunk);
+                chunk.clear();
+            }
+        }
+        if(!chunk.isEmpty()){
+            userStatsRepository.foldVotesReceived(chunk);
+        }
+    }
+
+    private void recordVotesReceived(Long pollCreatorId){
+        if(!TransactionSynchronizationManager.isSynchronizationActive()){
+            votedPollCreators.add(pollCreatorId);
+            return;
+        }
+        // A fold before the commit would not see the vote yet
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                votedPollCreators.add(pollCreatorId);
+            }
+        });
+    }
+}
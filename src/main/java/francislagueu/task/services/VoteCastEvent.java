@@ -0,0 +1,19 @@
+package francislagueu.task.services;
+
+public class VoteCastEvent {
+    private final Long pollId;
+    private final Long choiceId;
+
+    public VoteCastEvent(Long pollId, Long choiceId) {
+        this.pollId = pollId;
+        this.choiceId = choiceId;
+    }
+
+    public Long getPollId() {
+        return pollId;
+    }
+
+    public Long getChoiceId() {
+        return choiceId;
+    }
+}
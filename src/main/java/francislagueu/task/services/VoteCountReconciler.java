@@ -0,0 +1,84 @@
+package francislagueu.task.services;
+
+import francislagueu.task.models.ChoiceVoteCountCheck;
+import francislagueu.task.repositories.ChoiceRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Walks the choices table in id order and repairs any choice whose stored vote_count, plus its counter shards,
+ * no longer matches the rows in votes. Stored and actual counts are read in one statement so concurrent votes, which bump
+ * both sides in the same transaction, never show up as drift; repairs are applied as deltas for the same reason.
+ */
+@Component
+public class VoteCountReconciler {
+
+    @Autowired
+    private ChoiceRepository choiceRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ExpiredPollCache expiredPollCache;
+
+    @Autowired
+    private PollVersions pollVersions;
+
+    @Autowired
+    private VoteTallyCache voteTallyCache;
+
+    @Value("${app.voteCountReconcileChunkSize}")
+    private int chunkSize;
+
+    private Counter driftedChoices;
+    private Counter driftedVotes;
+    private final AtomicLong lastRunDrift = new AtomicLong();
+
+    private static final Logger logger = LoggerFactory.getLogger(VoteCountReconciler.class);
+
+    @PostConstruct
+    void init(){
+        driftedChoices = meterRegistry.counter("votes.reconciliation.drifted.choices");
+        driftedVotes = meterRegistry.counter("votes.reconciliation.drifted.votes");
+        meterRegistry.gauge("votes.reconciliation.last.run.drift", lastRunDrift);
+    }
+
+    @Scheduled(initialDelayString = "${app.voteCountReconcileIntervalInMs}", fixedDelayString = "${app.voteCountReconcileIntervalInMs}")
+    public void reconcile(){
+        long afterId = 0;
+        long runDrift = 0;
+        List<ChoiceVoteCountCheck> chunk;
+        do{
+            chunk = choiceRepository.checkVoteCountsAfter(afterId, PageRequest.of(0, chunkSize));
+            for(ChoiceVoteCountCheck check : chunk){
+                long drift = check.getDrift();
+                if(drift != 0){
+                    logger.warn("Choice {} vote count drifted by {}, repairing", check.getChoiceId(), drift);
+                    choiceRepository.adjustVoteCount(check.getChoiceId(), drift);
+                    driftedChoices.increment();
+                    driftedVotes.increment(Math.abs(drift));
+                    runDrift += Math.abs(drift);
+                }
+                afterId = check.getChoiceId();
+            }
+        }while(chunk.size() == chunkSize);
+        lastRunDrift.set(runDrift);
+        if(runDrift > 0){
+            voteTallyCache.evictAll();
+            expiredPollCache.invalidateAll();
+            pollVersions.advanceAll();
+        }
+    }
+}
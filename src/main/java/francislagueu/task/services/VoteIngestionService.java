@@ -0,0 +1,315 @@
+package francislagueu.task.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import francislagueu.task.exception.ServiceUnavailableException;
+import francislagueu.task.models.Vote;
+import francislagueu.task.payload.VoteReceipt;
+import francislagueu.task.payload.VoteStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind path for votes, enabled with {@code app.asyncVoteIngestion}. Validated votes are queued and a
+ * few writer threads drain them into multi-row JDBC batches, one transaction per batch. Callers get a ticket
+ * whose final status (accepted, duplicate, rejected or failed) can be looked up for
+ * {@code app.voteReceiptRetentionInMs}; past {@code app.voteReceiptMaxTickets} receipts the cache evicts some early.
+ * Duplicates are detected with Postgres' ON CONFLICT so one repeated vote does not fail the whole batch. Each row
+ * is only inserted while its poll is open and was not yet expired when the vote was taken, under a share lock on
+ * the poll row, so a vote still queued when the expiry scheduler closes the poll is rejected instead of landing
+ * behind its results snapshot.
+ */
+@Component
+public class VoteIngestionService {
+
+    private static final String INSERT_VOTE = "INSERT INTO votes (id, poll_id, choice_id, user_id, created_at, updated_at) " +
+            "SELECT CAST(? AS bigint), p.id, CAST(? AS bigint), CAST(? AS bigint), CAST(? AS timestamp), CAST(? AS timestamp) " +
+            "FROM polls p WHERE p.id = ? AND NOT p.closed AND p.expiration_date_time > CAST(? AS timestamp) FOR SHARE " +
+            "ON CONFLICT (poll_id, user_id) DO NOTHING";
+
+    private static final String COUNT_VOTES = "SELECT COUNT(*) FROM votes WHERE poll_id = ? AND user_id = ?";
+
+    private static final String NEXT_VOTE_ID_BLOCK = "SELECT nextval('" + Vote.ID_SEQUENCE + "')";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ChoiceVoteCounter choiceVoteCounter;
+
+    @Autowired
+    private VoteTallyCache voteTallyCache;
+
+    @Autowired
+    private UserStatsCounter userStatsCounter;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.asyncVoteIngestion}")
+    private boolean enabled;
+
+    @Value("${app.voteIngestionQueueCapacity}")
+    private int queueCapacity;
+
+    @Value("${app.voteIngestionWriters}")
+    private int writers;
+
+    @Value("${app.voteIngestionBatchSize}")
+    private int batchSize;
+
+    @Value("${app.voteReceiptRetentionInMs}")
+    private long receiptRetentionInMs;
+
+    @Value("${app.voteReceiptMaxTickets}")
+    private long receiptMaxTickets;
+
+    private BlockingQueue<PendingVote> queue;
+    private ExecutorService writerPool;
+    private TransactionTemplate batchTransaction;
+    private Cache<String, VoteReceipt> receipts;
+    private volatile boolean accepting;
+    // Submissions hold the read lock while they queue, so once stop() has flipped accepting under the write
+    // lock every accepted vote is in the queue before the writers can see it empty and exit
+    private final ReadWriteLock submissionLock = new ReentrantReadWriteLock();
+
+    private static final Logger logger = LoggerFactory.getLogger(VoteIngestionService.class);
+
+    @PostConstruct
+    void start(){
+        if(!enabled){
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        receipts = Caffeine.newBuilder()
+                .maximumSize(receiptMaxTickets)
+                .expireAfterWrite(Duration.ofMillis(receiptRetentionInMs))
+                .build();
+        batchTransaction = new TransactionTemplate(transactionManager);
+        batchTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        writerPool = Executors.newFixedThreadPool(writers, runnable -> {
+            Thread thread = new Thread(runnable, "vote-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        accepting = true;
+        for(int i = 0; i < writers; i++){
+            writerPool.execute(this::drain);
+        }
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if(!enabled){
+            return;
+        }
+        submissionLock.writeLock().lock();
+        try{
+            accepting = false;
+        }finally {
+            submissionLock.writeLock().unlock();
+        }
+        writerPool.shutdown();
+        if(!writerPool.awaitTermination(30, TimeUnit.SECONDS)){
+            logger.error("Vote writers did not drain within 30 seconds, {} votes were not written", queue.size());
+        }
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    public VoteReceipt submit(Long pollId, Long choiceId, int counterShards, Long pollCreatorId, Long userId){
+        submissionLock.readLock().lock();
+        try{
+            if(!accepting){
+                throw new ServiceUnavailableException("Vote ingestion is shutting down, please retry");
+            }
+            PendingVote vote = new PendingVote(UUID.randomUUID().toString(), pollId, choiceId, counterShards, pollCreatorId, userId, Instant.now());
+            VoteReceipt receipt = new VoteReceipt(vote.ticket, pollId, choiceId, VoteStatus.PENDING);
+            receipts.put(vote.ticket, receipt);
+            if(!queue.offer(vote)){
+                receipts.invalidate(vote.ticket);
+                throw new ServiceUnavailableException("Too many votes in flight, please retry");
+            }
+            return receipt;
+        }finally {
+            submissionLock.readLock().unlock();
+        }
+    }
+
+    public VoteReceipt getReceipt(String ticket){
+        return receipts == null ? null : receipts.getIfPresent(ticket);
+    }
+
+    private void drain(){
+        List<PendingVote> batch = new ArrayList<>(batchSize);
+        while(accepting || !queue.isEmpty()){
+            try{
+                PendingVote first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if(first == null){
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            }catch (InterruptedException ex){
+                Thread.currentThread().interrupt();
+                return;
+            }finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<PendingVote> batch){
+        Map<Long, VoteTallyCache.VoteTally> talliesBeforeWrite = new HashMap<>();
+        batch.forEach(vote -> talliesBeforeWrite.computeIfAbsent(vote.pollId, voteTallyCache::getIfPresent));
+        try{
+            complete(batch, batchTransaction.execute(status -> insert(batch)), talliesBeforeWrite);
+        }catch (RuntimeException ex){
+            logger.warn("Batch of {} votes failed, retrying one by one", batch.size(), ex);
+            for(PendingVote vote : batch){
+                try{
+                    complete(Collections.singletonList(vote), batchTransaction.execute(status -> insert(Collections.singletonList(vote))),
+                            talliesBeforeWrite);
+                }catch (RuntimeException voteEx){
+                    logger.error("Could not write vote of user {} in poll {}", vote.userId, vote.pollId, voteEx);
+                    setStatus(vote, VoteStatus.FAILED);
+                }
+            }
+        }
+    }
+
+    private VoteStatus[] insert(List<PendingVote> batch){
+        long[] ids = allocateVoteIds(batch.size());
+        int[] inserted = jdbcTemplate.batchUpdate(INSERT_VOTE, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement statement, int i) throws SQLException {
+                PendingVote vote = batch.get(i);
+                Timestamp createdAt = Timestamp.from(vote.createdAt);
+                statement.setLong(1, ids[i]);
+                statement.setLong(2, vote.choiceId);
+                statement.setLong(3, vote.userId);
+                statement.setTimestamp(4, createdAt);
+                statement.setTimestamp(5, createdAt);
+                statement.setLong(6, vote.pollId);
+                statement.setTimestamp(7, createdAt);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return batch.size();
+            }
+        });
+
+        VoteStatus[] statuses = new VoteStatus[batch.size()];
+        Map<Long, Long> choiceVotes = new HashMap<>();
+        Map<Long, Integer> choiceShards = new HashMap<>();
+        Map<Long, Long> voterVotes = new HashMap<>();
+        Set<Long> pollCreators = new HashSet<>();
+        for(int i = 0; i < batch.size(); i++){
+            PendingVote vote = batch.get(i);
+            if(inserted[i] > 0){
+                statuses[i] = VoteStatus.ACCEPTED;
+                choiceVotes.merge(vote.choiceId, 1L, Long::sum);
+                choiceShards.put(vote.choiceId, vote.counterShards);
+                voterVotes.merge(vote.userId, 1L, Long::sum);
+                pollCreators.add(vote.pollCreatorId);
+            }else{
+                // Not inserted either because the user already voted or because the poll no longer takes votes
+                Long votes = jdbcTemplate.queryForObject(COUNT_VOTES, Long.class, vote.pollId, vote.userId);
+                statuses[i] = votes != null && votes > 0 ? VoteStatus.DUPLICATE : VoteStatus.REJECTED;
+            }
+        }
+        choiceVotes.forEach((choiceId, votes) -> choiceVoteCounter.add(choiceId, choiceShards.get(choiceId), votes));
+        userStatsCounter.recordVotes(voterVotes, pollCreators);
+        return statuses;
+    }
+
+    /**
+     * Takes ids from the same pooled sequence Hibernate uses for votes: each sequence value v reserves the
+     * block (v - allocationSize, v], so these ids never collide with ones handed out by Hibernate.
+     */
+    private long[] allocateVoteIds(int count){
+        long[] ids = new long[count];
+        int allocated = 0;
+        while(allocated < count){
+            long blockEnd = jdbcTemplate.queryForObject(NEXT_VOTE_ID_BLOCK, Long.class);
+            for(long id = Math.max(1, blockEnd - Vote.ID_ALLOCATION_SIZE + 1); id <= blockEnd && allocated < count; id++){
+                ids[allocated++] = id;
+            }
+        }
+        return ids;
+    }
+
+    private void complete(List<PendingVote> batch, VoteStatus[] statuses, Map<Long, VoteTallyCache.VoteTally> talliesBeforeWrite){
+        for(int i = 0; i < batch.size(); i++){
+            PendingVote vote = batch.get(i);
+            setStatus(vote, statuses[i]);
+            if(statuses[i] == VoteStatus.ACCEPTED){
+                voteTallyCache.recordVote(vote.pollId, talliesBeforeWrite.get(vote.pollId), vote.choiceId);
+                eventPublisher.publishEvent(new VoteCastEvent(vote.pollId, vote.choiceId));
+            }
+        }
+    }
+
+    private void setStatus(PendingVote vote, VoteStatus status){
+        receipts.put(vote.ticket, new VoteReceipt(vote.ticket, vote.pollId, vote.choiceId, status));
+    }
+
+    private static class PendingVote {
+        private final String ticket;
+        private final Long pollId;
+        private final Long choiceId;
+        private final int counterShards;
+        private final Long pollCreatorId;
+        private final Long userId;
+        private final Instant createdAt;
+
+        PendingVote(String ticket, Long pollId, Long choiceId, int counterShards, Long pollCreatorId, Long userId, Instant createdAt) {
+            this.ticket = ticket;
+            this.pollId = pollId;
+            this.choiceId = choiceId;
+            this.counterShards = counterShards;
+            this.pollCreatorId = pollCreatorId;
+            this.userId = userId;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package francislagueu.task.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import francislagueu.task.models.Poll;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-poll vote counts of open polls kept in memory, in front of the persisted choice counters, so hot polls
+ * are answered without summing their counter shards on every read. A tally is loaded once from the counters and
+ * then moves forward through {@link #recordVote}. It is reloaded from the counters at least every
+ * {@code app.voteTallyCacheTtlInMs}, which picks up votes taken by other instances, and whenever the reconciler
+ * repairs drift.
+ */
+@Component
+public class VoteTallyCache {
+
+    @Autowired
+    private ChoiceVoteCounter choiceVoteCounter;
+
+    @Value("${app.voteTallyCacheMaxPolls}")
+    private long maxPolls;
+
+    @Value("${app.voteTallyCacheIdleInMs}")
+    private long idleInMs;
+
+    @Value("${app.voteTallyCacheTtlInMs}")
+    private long ttlInMs;
+
+    private Cache<Long, VoteTally> tallies;
+
+    @PostConstruct
+    void init(){
+        tallies = Caffeine.newBuilder()
+                .maximumSize(maxPolls)
+                .expireAfterAccess(Duration.ofMillis(idleInMs))
+                .expireAfterWrite(Duration.ofMillis(ttlInMs))
+                .build();
+    }
+
+    /**
+     * Must not be called in a transaction that has written votes of the poll, since the tally would keep them
+     * even if that transaction rolls back.
+     */
+    public Map<Long, Long> getChoiceVotesMap(Poll poll){
+        if(poll.isClosed()){
+            return choiceVoteCounter.getChoiceVotesMap(Collections.singletonList(poll));
+        }
+        return tallies.get(poll.getId(), this::load).snapshot();
+    }
+
+    /**
+     * Must be called before the vote is written. A tally that is already cached at this point cannot include
+     * the new vote, so it is safe to increment once the write commits.
+     */
+    public VoteTally getIfPresent(Long pollId){
+        return tallies.getIfPresent(pollId);
+    }
+
+    /**
+     * Applies a vote once its transaction commits, or straight away outside a transaction. When no tally was
+     * cached before the write, or it has been replaced since, a concurrent load may or may not have seen the new
+     * row, so the entry is dropped and reloaded on the next read instead.
+     */
+    public void recordVote(Long pollId, VoteTally tallyBeforeWrite, Long choiceId){
+        if(!TransactionSynchronizationManager.isSynchronizationActive()){
+            apply(pollId, tallyBeforeWrite, choiceId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                apply(pollId, tallyBeforeWrite, choiceId);
+            }
+        });
+    }
+
+    public void evict(Long pollId){
+        tallies.invalidate(pollId);
+    }
+
+    public void evictAll(){
+        tallies.invalidateAll();
+    }
+
+    private void apply(Long pollId, VoteTally tallyBeforeWrite, Long choiceId){
+        if(tallyBeforeWrite == null || tallies.getIfPresent(pollId) != tallyBeforeWrite){
+            tallies.invalidate(pollId);
+            return;
+        }
+        tallyBeforeWrite.increment(choiceId);
+    }
+
+    /**
+     * Reads the counters afresh rather than from the caller's poll, which may have been loaded before votes that
+     * the tally would then never see.
+     */
+    private VoteTally load(Long pollId){
+        VoteTally tally = new VoteTally();
+        choiceVoteCounter.getLiveChoiceVotesMap(pollId).forEach(tally::add);
+        return tally;
+    }
+
+    public static class VoteTally {
+        private final ConcurrentMap<Long, LongAdder> counters = new ConcurrentHashMap<>();
+
+        void add(Long choiceId, long delta){
+            counters.computeIfAbsent(choiceId, id -> new LongAdder()).add(delta);
+        }
+
+        void increment(Long choiceId){
+            counters.computeIfAbsent(choiceId, id -> new LongAdder()).increment();
+        }
+
+        Map<Long, Long> snapshot(){
+            Map<Long, Long> choiceVotes = new HashMap<>(counters.size());
+            counters.forEach((choiceId, counter) -> choiceVotes.put(choiceId, counter.sum()));
+            return choiceVotes;
+        }
+    }
+}
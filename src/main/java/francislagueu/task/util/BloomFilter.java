@@ -0,0 +1,117 @@
+package francislagueu.task.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Bloom filter over strings or longs. {@link #mightContain} never returns false for a value that was put,
+ * and returns true for an absent value with roughly the false positive rate it was sized for.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashFunctions;
+    private final long expectedInsertions;
+    private final AtomicLong insertions = new AtomicLong();
+
+    public BloomFilter(long expectedInsertions, double falsePositiveRate){
+        this.expectedInsertions = Math.max(1, expectedInsertions);
+        long optimalBits = (long) Math.ceil(-this.expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (optimalBits + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitCount / this.expectedInsertions * Math.log(2)));
+    }
+
+    public void put(String value){
+        putHash(hash(value));
+    }
+
+    public void put(long value){
+        putHash(mix(value + 0x9e3779b97f4a7c15L));
+    }
+
+    public boolean mightContain(String value){
+        return mightContainHash(hash(value));
+    }
+
+    public boolean mightContain(long value){
+        return mightContainHash(mix(value + 0x9e3779b97f4a7c15L));
+    }
+
+    public long getInsertions(){
+        return insertions.get();
+    }
+
+    public boolean isSaturated(){
+        return insertions.get() > expectedInsertions;
+    }
+
+    public double getFillRatio(){
+        long setBits = 0;
+        for(int i = 0; i < bits.length(); i++){
+            setBits += Long.bitCount(bits.get(i));
+        }
+        return (double) setBits / bitCount;
+    }
+
+    public double getExpectedFalsePositiveRate(){
+        return Math.pow(getFillRatio(), hashFunctions);
+    }
+
+    private void putHash(long hash){
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for(int i = 1; i <= hashFunctions; i++){
+            setBit(index(hash1 + i * hash2));
+        }
+        insertions.incrementAndGet();
+    }
+
+    private boolean mightContainHash(long hash){
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for(int i = 1; i <= hashFunctions; i++){
+            long index = index(hash1 + i * hash2);
+            if((bits.get((int) (index >>> 6)) & (1L << index)) == 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long index(int combinedHash){
+        return (combinedHash & Integer.MAX_VALUE) % bitCount;
+    }
+
+    private void setBit(long index){
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long current;
+        do{
+            current = bits.get(word);
+            if((current & mask) != 0){
+                return;
+            }
+        }while(!bits.compareAndSet(word, current, current | mask));
+    }
+
+    private static long hash(String value){
+        long hash = 0xcbf29ce484222325L;
+        for(int i = 0; i < value.length(); i++){
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash){
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
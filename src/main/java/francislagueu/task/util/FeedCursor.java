@@ -0,0 +1,55 @@
+package francislagueu.task.util;
+
+import francislagueu.task.exception.BadRequestException;
+
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Position in a feed ordered by (createdAt DESC, id DESC), handed to clients as an opaque url-safe token.
+ * The id breaks ties between rows created at the same instant, so a seek never skips or repeats a row.
+ */
+public class FeedCursor {
+
+    private static final int TOKEN_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    private final Instant createdAt;
+    private final Long id;
+
+    public FeedCursor(Instant createdAt, Long id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String encode(){
+        ByteBuffer buffer = ByteBuffer.allocate(TOKEN_BYTES)
+                .putLong(createdAt.getEpochSecond())
+                .putInt(createdAt.getNano())
+                .putLong(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    public static FeedCursor decode(String token){
+        try{
+            byte[] bytes = Base64.getUrlDecoder().decode(token);
+            if(bytes.length != TOKEN_BYTES){
+                throw new BadRequestException("Invalid cursor: " + token);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            Instant createdAt = Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+            return new FeedCursor(createdAt, buffer.getLong());
+        }catch (IllegalArgumentException | DateTimeException ex){
+            throw new BadRequestException("Invalid cursor: " + token, ex);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package francislagueu.task.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+
+/**
+ * Hashed timing wheel (Varghese and Lauck) for very many one-shot deadlines keyed by a long id. A deadline is
+ * hashed into one of {@code ticksPerWheel} buckets by its tick and only remembers how many full turns of the
+ * wheel it still has to wait, so scheduling is O(1), each tick walks a single bucket, and a pending deadline
+ * costs one small node. Deadlines fire on the wheel's own thread, at most one tick late and never early;
+ * deadlines already in the past fire on the next tick. Handlers should hand anything slow to another thread.
+ */
+public class HashedTimingWheel implements AutoCloseable {
+
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    private final long tickNanos;
+    private final Node[] buckets;
+    private final int mask;
+    private final LongConsumer handler;
+    private final Queue<Node> scheduled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Thread worker;
+    private final long startNanos;
+    private final long startMillis;
+    private volatile boolean running = true;
+    private long tick;
+
+    private static final Logger logger = LoggerFactory.getLogger(HashedTimingWheel.class);
+
+    public HashedTimingWheel(String name, long tickInMs, int ticksPerWheel, LongConsumer handler) {
+        if(tickInMs <= 0 || ticksPerWheel <= 0){
+            throw new IllegalArgumentException("tickInMs and ticksPerWheel must be positive");
+        }
+        int wheelSize = Integer.highestOneBit(ticksPerWheel - 1) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickInMs);
+        this.buckets = new Node[Math.max(1, wheelSize)];
+        this.mask = buckets.length - 1;
+        this.handler = handler;
+        this.startNanos = System.nanoTime();
+        this.startMillis = System.currentTimeMillis();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public void schedule(long id, Instant deadline){
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(deadline.toEpochMilli() - startMillis);
+        scheduled.add(new Node(id, Math.max(0, delayNanos)));
+        pending.incrementAndGet();
+    }
+
+    public int getPending(){
+        return pending.get();
+    }
+
+    @Override
+    public void close(){
+        running = false;
+        worker.interrupt();
+        try{
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(){
+        while(running){
+            long sleepNanos = startNanos + (tick + 1) * tickNanos - System.nanoTime();
+            if(sleepNanos > 0){
+                LockSupport.parkNanos(this, sleepNanos);
+                continue;
+            }
+            transferScheduled();
+            expire((int) (tick & mask));
+            tick++;
+        }
+    }
+
+    private void transferScheduled(){
+        for(int i = 0; i < MAX_TRANSFERS_PER_TICK; i++){
+            Node node = scheduled.poll();
+            if(node == null){
+                return;
+            }
+            long deadlineTick = Math.max(node.deadlineNanos / tickNanos, tick);
+            node.remainingRounds = (deadlineTick - tick) / buckets.length;
+            int bucket = (int) (deadlineTick & mask);
+            node.next = buckets[bucket];
+            buckets[bucket] = node;
+        }
+    }
+
+    private void expire(int bucket){
+        Node previous = null;
+        Node node = buckets[bucket];
+        while(node != null){
+            Node next = node.next;
+            if(node.remainingRounds > 0){
+                node.remainingRounds--;
+                previous = node;
+            }else{
+                if(previous == null){
+                    buckets[bucket] = next;
+                }else{
+                    previous.next = next;
+                }
+                pending.decrementAndGet();
+                fire(node.id);
+            }
+            node = next;
+        }
+    }
+
+    private void fire(long id){
+        try{
+            handler.accept(id);
+        }catch (RuntimeException ex){
+            logger.error("Deadline handler failed for {}", id, ex);
+        }
+    }
+
+    private static class Node {
+        private final long id;
+        private final long deadlineNanos;
+        private long remainingRounds;
+        private Node next;
+
+        Node(long id, long deadlineNanos) {
+            this.id = id;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+}
@@ -1,12 +1,16 @@
 package francislagueu.task.util;
 
 import francislagueu.task.models.Poll;
+import francislagueu.task.models.PollFeedRow;
 import francislagueu.task.models.User;
 import francislagueu.task.payload.ChoiceResponse;
 import francislagueu.task.payload.PollResponse;
+import francislagueu.task.payload.PollTally;
 import francislagueu.task.payload.UserSummary;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -35,7 +39,7 @@ public class ModelMapper {
         }).collect(Collectors.toList());
 
         pollResponse.setChoices(choiceResponses);
-        UserSummary creatorSummary = new UserSummary(creator.getId(), creator.getUsername(), creator.getFirstName(),creator.getLastName());
+        UserSummary creatorSummary = new UserSummary(creator.getUuid(), creator.getUsername(), creator.getFirstName(),creator.getLastName());
         pollResponse.setCreatedBy(creatorSummary);
 
         if(userVote != null){
@@ -47,4 +51,47 @@ public class ModelMapper {
 
         return pollResponse;
     }
+
+    public static PollTally mapPollToPollTally(Poll poll, Map<Long, Long> choicesVotesMap){
+        List<ChoiceResponse> choiceResponses = poll.getChoices().stream().map(choice -> {
+            ChoiceResponse choiceResponse = new ChoiceResponse();
+            choiceResponse.setId(choice.getId());
+            choiceResponse.setText(choice.getText());
+            choiceResponse.setVoteCount(choicesVotesMap.getOrDefault(choice.getId(), 0L));
+            return choiceResponse;
+        }).collect(Collectors.toList());
+        long totalVotes = choiceResponses.stream().mapToLong(ChoiceResponse::getVoteCount).sum();
+        return new PollTally(poll.getId(), choiceResponses, totalVotes);
+    }
+
+    public static List<PollResponse> mapPollFeedRowsToPollResponses(List<PollFeedRow> rows){
+        Map<Long, PollResponse> pollResponses = new LinkedHashMap<>();
+        Instant now = Instant.now();
+        for(PollFeedRow row : rows){
+            PollResponse pollResponse = pollResponses.computeIfAbsent(row.getPollId(), pollId -> {
+                PollResponse response = new PollResponse();
+                response.setId(pollId);
+                response.setQuestion(row.getQuestion());
+                response.setCreationDateTime(row.getCreatedAt());
+                response.setExpirationDateTime(row.getExpirationDateTime());
+                response.setExpired(row.getExpirationDateTime().isBefore(now));
+                response.setChoices(new ArrayList<>());
+                if(row.getCreatorUuid() != null){
+                    response.setCreatedBy(new UserSummary(row.getCreatorUuid(), row.getCreatorUsername(),
+                            row.getCreatorFirstName(), row.getCreatorLastName()));
+                }
+                response.setSelectedChoice(row.getSelectedChoiceId());
+                response.setTotalVotes(0L);
+                return response;
+            });
+
+            ChoiceResponse choiceResponse = new ChoiceResponse();
+            choiceResponse.setId(row.getChoiceId());
+            choiceResponse.setText(row.getChoiceText());
+            choiceResponse.setVoteCount(row.getVoteCount());
+            pollResponse.getChoices().add(choiceResponse);
+            pollResponse.setTotalVotes(pollResponse.getTotalVotes() + row.getVoteCount());
+        }
+        return new ArrayList<>(pollResponses.values());
+    }
 }
@@ -0,0 +1,44 @@
+package francislagueu.task.util;
+
+/**
+ * JDBC statements executed, and the time spent executing them, by the current thread since begin(). Counted on
+ * connections from StatementCountingDataSource; a batch counts as one statement. Threads that never called begin()
+ * are not counted.
+ */
+public class SqlStatementStats {
+
+    private static final ThreadLocal<SqlStatementStats> CURRENT = new ThreadLocal<>();
+
+    private int statements;
+    private long nanos;
+
+    public static SqlStatementStats begin(){
+        SqlStatementStats stats = new SqlStatementStats();
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    public static SqlStatementStats current(){
+        return CURRENT.get();
+    }
+
+    public static void end(){
+        CURRENT.remove();
+    }
+
+    static void record(long nanos){
+        SqlStatementStats stats = CURRENT.get();
+        if(stats != null){
+            stats.statements++;
+            stats.nanos += nanos;
+        }
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+}
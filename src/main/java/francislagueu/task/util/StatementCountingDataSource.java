@@ -0,0 +1,62 @@
+package francislagueu.task.util;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Hikari pool whose connections record every execute call on their statements in the calling thread's
+ * SqlStatementStats. Only the connections handed out are proxied, so the pool itself keeps its type for Boot's
+ * pool metrics and metadata; everything else, unwrap included, goes straight to the wrapped objects.
+ */
+public class StatementCountingDataSource extends HikariDataSource {
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection connection = super.getConnection();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> wrapStatement(invoke(method, connection, args)));
+    }
+
+    private static Object wrapStatement(Object result){
+        if(result instanceof CallableStatement){
+            return countExecutions(CallableStatement.class, (CallableStatement) result);
+        }
+        if(result instanceof PreparedStatement){
+            return countExecutions(PreparedStatement.class, (PreparedStatement) result);
+        }
+        if(result instanceof Statement){
+            return countExecutions(Statement.class, (Statement) result);
+        }
+        return result;
+    }
+
+    private static <T extends Statement> T countExecutions(Class<T> type, T statement){
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if(!method.getName().startsWith("execute")){
+                return invoke(method, statement, args);
+            }
+            long start = System.nanoTime();
+            try{
+                return invoke(method, statement, args);
+            }finally {
+                SqlStatementStats.record(System.nanoTime() - start);
+            }
+        }));
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try{
+            return method.invoke(target, args);
+        }catch (InvocationTargetException ex){
+            throw ex.getCause();
+        }
+    }
+}
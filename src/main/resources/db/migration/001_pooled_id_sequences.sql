@@ -0,0 +1,28 @@
+-- Moves polls, choices, votes and choice_vote_shards from serial (identity) ids to the pooled sequences
+-- Hibernate allocates from in blocks of 50. Run once against an existing Postgres database, with the
+-- application stopped, before deploying the version that maps these ids to sequences.
+-- Each sequence is moved past the current maximum id so pooled blocks never reuse an existing id.
+
+BEGIN;
+
+CREATE SEQUENCE IF NOT EXISTS polls_seq INCREMENT BY 50;
+SELECT setval('polls_seq', COALESCE((SELECT MAX(id) FROM polls), 0) + 50);
+ALTER TABLE polls ALTER COLUMN id DROP DEFAULT;
+DROP SEQUENCE IF EXISTS polls_id_seq;
+
+CREATE SEQUENCE IF NOT EXISTS choices_seq INCREMENT BY 50;
+SELECT setval('choices_seq', COALESCE((SELECT MAX(id) FROM choices), 0) + 50);
+ALTER TABLE choices ALTER COLUMN id DROP DEFAULT;
+DROP SEQUENCE IF EXISTS choices_id_seq;
+
+CREATE SEQUENCE IF NOT EXISTS votes_seq INCREMENT BY 50;
+SELECT setval('votes_seq', COALESCE((SELECT MAX(id) FROM votes), 0) + 50);
+ALTER TABLE votes ALTER COLUMN id DROP DEFAULT;
+DROP SEQUENCE IF EXISTS votes_id_seq;
+
+CREATE SEQUENCE IF NOT EXISTS choice_vote_shards_seq INCREMENT BY 50;
+SELECT setval('choice_vote_shards_seq', COALESCE((SELECT MAX(id) FROM choice_vote_shards), 0) + 50);
+ALTER TABLE choice_vote_shards ALTER COLUMN id DROP DEFAULT;
+DROP SEQUENCE IF EXISTS choice_vote_shards_id_seq;
+
+COMMIT;
@@ -0,0 +1,58 @@
+-- Replaces the 36 character UUID primary key of user_entity with a dense bigint key taken from the pooled
+-- user_entity_seq sequence. The UUID is kept in user_entity.uuid as the public id (JWT subject, API payloads),
+-- while votes.user_id, user_roles.user_id, polls.created_by and polls.updated_by are rewritten to the bigint key.
+-- Run once against an existing Postgres database, with the application stopped, after 001_pooled_id_sequences.sql.
+
+BEGIN;
+
+-- Foreign keys point at the old primary key, drop them whatever name Hibernate generated for them.
+DO $$
+DECLARE
+    fk record;
+BEGIN
+    FOR fk IN SELECT conrelid::regclass AS table_name, conname FROM pg_constraint
+              WHERE contype = 'f' AND confrelid = 'user_entity'::regclass LOOP
+        EXECUTE format('ALTER TABLE %s DROP CONSTRAINT %I', fk.table_name, fk.conname);
+    END LOOP;
+END $$;
+
+-- Existing users are numbered in sign up order, new ones continue from the sequence.
+ALTER TABLE user_entity RENAME COLUMN id TO uuid;
+ALTER TABLE user_entity ADD COLUMN id bigint;
+UPDATE user_entity u SET id = numbered.id
+FROM (SELECT uuid, row_number() OVER (ORDER BY created_at, uuid) AS id FROM user_entity) numbered
+WHERE u.uuid = numbered.uuid;
+ALTER TABLE user_entity ALTER COLUMN id SET NOT NULL;
+ALTER TABLE user_entity DROP CONSTRAINT user_entity_pkey;
+ALTER TABLE user_entity ADD CONSTRAINT user_entity_pkey PRIMARY KEY (id);
+ALTER TABLE user_entity ADD CONSTRAINT user_entity_uuid_key UNIQUE (uuid);
+CREATE SEQUENCE IF NOT EXISTS user_entity_seq INCREMENT BY 50;
+SELECT setval('user_entity_seq', COALESCE((SELECT MAX(id) FROM user_entity), 0) + 50);
+
+-- Dropping the old column also drops the unique (poll_id, user_id) index built on it.
+ALTER TABLE votes ADD COLUMN user_key bigint;
+UPDATE votes v SET user_key = u.id FROM user_entity u WHERE u.uuid = v.user_id;
+ALTER TABLE votes DROP COLUMN user_id;
+ALTER TABLE votes RENAME COLUMN user_key TO user_id;
+ALTER TABLE votes ALTER COLUMN user_id SET NOT NULL;
+ALTER TABLE votes ADD CONSTRAINT votes_poll_id_user_id_key UNIQUE (poll_id, user_id);
+ALTER TABLE votes ADD CONSTRAINT votes_user_id_fkey FOREIGN KEY (user_id) REFERENCES user_entity (id);
+
+ALTER TABLE user_roles ADD COLUMN user_key bigint;
+UPDATE user_roles r SET user_key = u.id FROM user_entity u WHERE u.uuid = r.user_id;
+ALTER TABLE user_roles DROP COLUMN user_id;
+ALTER TABLE user_roles RENAME COLUMN user_key TO user_id;
+ALTER TABLE user_roles ALTER COLUMN user_id SET NOT NULL;
+ALTER TABLE user_roles ADD CONSTRAINT user_roles_pkey PRIMARY KEY (user_id, role_id);
+ALTER TABLE user_roles ADD CONSTRAINT user_roles_user_id_fkey FOREIGN KEY (user_id) REFERENCES user_entity (id);
+
+ALTER TABLE polls ADD COLUMN created_by_key bigint;
+ALTER TABLE polls ADD COLUMN updated_by_key bigint;
+UPDATE polls p SET created_by_key = (SELECT u.id FROM user_entity u WHERE u.uuid = p.created_by),
+                   updated_by_key = (SELECT u.id FROM user_entity u WHERE u.uuid = p.updated_by);
+ALTER TABLE polls DROP COLUMN created_by;
+ALTER TABLE polls DROP COLUMN updated_by;
+ALTER TABLE polls RENAME COLUMN created_by_key TO created_by;
+ALTER TABLE polls RENAME COLUMN updated_by_key TO updated_by;
+
+COMMIT;
@@ -0,0 +1,6 @@
+-- Indexes behind the keyset (cursor) feeds: newest first over all polls and over the polls of one creator.
+-- Postgres scans them backwards for ORDER BY created_at DESC, id DESC. CONCURRENTLY keeps polls writable
+-- while they build, so run this file outside a transaction block.
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS polls_created_at_id_idx ON polls (created_at, id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS polls_created_by_created_at_id_idx ON polls (created_by, created_at, id);
@@ -0,0 +1,4 @@
+-- Index behind the "polls voted by" feed, which pages a user's votes most recent first and seeks on
+-- (created_at, id) in cursor mode. Run outside a transaction block because of CONCURRENTLY.
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS votes_user_id_created_at_idx ON votes (user_id, created_at, id);
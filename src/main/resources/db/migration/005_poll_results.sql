@@ -0,0 +1,22 @@
+-- Closed flag and final results snapshot written by the poll expiry scheduler. Polls that expired before this
+-- runs stay open until the next application start, which closes them and snapshots their counts.
+-- The index serves the scan of open polls that rebuilds the scheduler at startup. CONCURRENTLY keeps polls
+-- writable while it builds, so run this file outside a transaction block.
+
+ALTER TABLE polls ADD COLUMN IF NOT EXISTS closed boolean NOT NULL DEFAULT false;
+
+CREATE TABLE IF NOT EXISTS poll_results (
+    poll_id bigint PRIMARY KEY,
+    total_votes bigint NOT NULL,
+    closed_at timestamp NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS poll_result_choices (
+    poll_id bigint NOT NULL,
+    choice_id bigint NOT NULL,
+    vote_count bigint NOT NULL,
+    CONSTRAINT poll_result_choices_pkey PRIMARY KEY (poll_id, choice_id),
+    CONSTRAINT poll_result_choices_poll_id_fkey FOREIGN KEY (poll_id) REFERENCES poll_results (poll_id)
+);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS polls_closed_expiration_date_time_idx ON polls (closed, expiration_date_time);
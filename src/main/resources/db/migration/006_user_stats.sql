@@ -0,0 +1,11 @@
+-- Activity counters served with the user profile. Rows are created at registration; users registered before
+-- this runs get theirs from the backfill job (UserStatsBackfill), which the profile falls back from by counting.
+
+CREATE TABLE IF NOT EXISTS user_stats (
+    user_id bigint NOT NULL,
+    poll_count bigint NOT NULL DEFAULT 0,
+    vote_count bigint NOT NULL DEFAULT 0,
+    votes_received bigint NOT NULL DEFAULT 0,
+    CONSTRAINT user_stats_pkey PRIMARY KEY (user_id),
+    CONSTRAINT user_stats_user_id_fkey FOREIGN KEY (user_id) REFERENCES user_entity (id)
+);
@@ -0,0 +1,11 @@
+-- Per-choice vote counters read by the poll responses and feeds, and the index the reconciler (VoteCountReconciler)
+-- counts votes per choice through. Existing choices get their count from the votes table, less whatever their
+-- counter shards already hold. Run once with the application stopped, before deploying the version that reads
+-- choices.vote_count; because of CONCURRENTLY, run this file outside a transaction block.
+
+ALTER TABLE choices ADD COLUMN IF NOT EXISTS vote_count bigint NOT NULL DEFAULT 0;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS votes_choice_id_idx ON votes (choice_id);
+
+UPDATE choices c SET vote_count = (SELECT count(*) FROM votes v WHERE v.choice_id = c.id)
+    - COALESCE((SELECT sum(s.vote_count) FROM choice_vote_shards s WHERE s.choice_id = c.id), 0);
@@ -0,0 +1,38 @@
+package francislagueu.task.benchmark;
+
+import francislagueu.task.TaskApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Boots the application on a random port against an in-memory H2 database for benchmarks. Each setting is only applied when the
+ * same key is not given as a system property, so -Dspring.datasource.* points a run at a real Postgres instead.
+ */
+public final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    public static ConfigurableApplicationContext start(String... properties){
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        List<String> defaults = new ArrayList<>(Arrays.asList(
+                "spring.datasource.url=jdbc:h2:mem:benchmark;MODE=PostgreSQL;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                "spring.datasource.username=sa",
+                "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "spring.jpa.hibernate.ddl-auto=create-drop",
+                "server.port=0",
+                "spring.jpa.show-sql=false",
+                "logging.level.org.hibernate.SQL=WARN",
+                "logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=WARN"));
+        defaults.addAll(Arrays.asList(properties));
+        String[] args = defaults.stream()
+                .filter(property -> System.getProperty(property.substring(0, property.indexOf('='))) == null)
+                .map(property -> "--" + property)
+                .toArray(String[]::new);
+        return new SpringApplicationBuilder(TaskApplication.class).run(args);
+    }
+}
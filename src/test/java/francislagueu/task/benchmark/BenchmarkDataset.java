@@ -0,0 +1,162 @@
+package francislagueu.task.benchmark;
+
+import francislagueu.task.models.Choice;
+import francislagueu.task.models.Poll;
+import francislagueu.task.models.Role;
+import francislagueu.task.models.RoleName;
+import francislagueu.task.models.User;
+import francislagueu.task.models.UserStats;
+import francislagueu.task.models.Vote;
+import francislagueu.task.repositories.PollRepository;
+import francislagueu.task.repositories.RoleRepository;
+import francislagueu.task.repositories.UserRepository;
+import francislagueu.task.repositories.UserStatsRepository;
+import francislagueu.task.repositories.VoteRepository;
+import org.springframework.context.ApplicationContext;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Users, polls and votes seeded through the repositories of a running application. Users are named user0,
+ * user1, ... with PASSWORD and ROLE_USER. Each poll has two to six choices and a random creator; the first half of
+ * the users (the voters) have each voted in votesPerUser polls picked with a skew towards the popular ones, and
+ * choice vote counts match the votes table. The other half (the fresh voters) have not voted anywhere, so they
+ * can cast new votes: the n-th of them goes to pollOf(n) from freshVoterOf(n), each pair coming up once.
+ */
+public final class BenchmarkDataset {
+
+    public static final String PASSWORD = "password";
+
+    private static final int SEED_CHUNK = 1000;
+
+    private final List<User> voters;
+    private final List<User> freshVoters;
+    private final Long[] pollIds;
+    private final Long[][] choiceIds;
+
+    private BenchmarkDataset(List<User> voters, List<User> freshVoters, Long[] pollIds, Long[][] choiceIds) {
+        this.voters = voters;
+        this.freshVoters = freshVoters;
+        this.pollIds = pollIds;
+        this.choiceIds = choiceIds;
+    }
+
+    public static BenchmarkDataset seed(ApplicationContext context, int userCount, int pollCount, int votesPerUser){
+        Random random = new Random(42);
+        votesPerUser = Math.min(votesPerUser, pollCount);
+        RoleRepository roleRepository = context.getBean(RoleRepository.class);
+        Role userRole = roleRepository.findByName(RoleName.ROLE_USER)
+                .orElseGet(() -> roleRepository.save(new Role(RoleName.ROLE_USER)));
+        String password = context.getBean(PasswordEncoder.class).encode(PASSWORD);
+
+        List<User> users = new ArrayList<>();
+        for(int i = 0; i < userCount; i++){
+            User user = new User("First" + i, "Last" + i, "user" + i + "@example.com", password, "user" + i);
+            user.setRoles(Collections.singleton(userRole));
+            users.add(user);
+        }
+        users = saveInChunks(users, context.getBean(UserRepository.class)::saveAll);
+        saveInChunks(users.stream().map(user -> new UserStats(user.getId())).collect(Collectors.toList()),
+                context.getBean(UserStatsRepository.class)::saveAll);
+        List<User> voters = users.subList(0, userCount / 2);
+
+        List<Poll> polls = new ArrayList<>();
+        Instant now = Instant.now();
+        for(int i = 0; i < pollCount; i++){
+            Poll poll = new Poll();
+            poll.setQuestion(DatasetText.question(random));
+            poll.setExpirationDateTime(now.plus(Duration.ofDays(1 + random.nextInt(7))));
+            poll.setCreatedBy(users.get(random.nextInt(userCount)).getId());
+            int choices = 2 + random.nextInt(5);
+            for(int c = 0; c < choices; c++){
+                poll.addChoice(new Choice(DatasetText.choice(random)));
+            }
+            polls.add(poll);
+        }
+
+        List<int[]> plannedVotes = new ArrayList<>();
+        for(int u = 0; u < voters.size(); u++){
+            Set<Integer> votedPolls = new LinkedHashSet<>();
+            while(votedPolls.size() < votesPerUser){
+                votedPolls.add(skewed(random, pollCount));
+            }
+            for(int p : votedPolls){
+                Poll poll = polls.get(p);
+                int c = skewed(random, poll.getChoices().size());
+                Choice choice = poll.getChoices().get(c);
+                choice.setVoteCount(choice.getVoteCount() + 1);
+                plannedVotes.add(new int[]{u, p, c});
+            }
+        }
+        polls = saveInChunks(polls, context.getBean(PollRepository.class)::saveAll);
+
+        List<Vote> votes = new ArrayList<>();
+        for(int[] plannedVote : plannedVotes){
+            Poll poll = polls.get(plannedVote[1]);
+            Vote vote = new Vote();
+            vote.setUser(voters.get(plannedVote[0]));
+            vote.setPoll(poll);
+            vote.setChoice(poll.getChoices().get(plannedVote[2]));
+            votes.add(vote);
+        }
+        saveInChunks(votes, context.getBean(VoteRepository.class)::saveAll);
+
+        return new BenchmarkDataset(voters, users.subList(userCount / 2, userCount),
+                polls.stream().map(Poll::getId).toArray(Long[]::new),
+                polls.stream()
+                        .map(poll -> poll.getChoices().stream().map(Choice::getId).toArray(Long[]::new))
+                        .toArray(Long[][]::new));
+    }
+
+    public List<User> getVoters() {
+        return voters;
+    }
+
+    public List<User> getFreshVoters() {
+        return freshVoters;
+    }
+
+    public int getPollCount(){
+        return pollIds.length;
+    }
+
+    public Long getPollId(int poll){
+        return pollIds[poll];
+    }
+
+    public Long[] getChoiceIds(int poll){
+        return choiceIds[poll];
+    }
+
+    public int freshVoterOf(long vote){
+        return (int) (vote % freshVoters.size());
+    }
+
+    // Runs past the last poll once every fresh voter has voted in every poll
+    public int pollOf(long vote){
+        return (int) (vote / freshVoters.size());
+    }
+
+    // Low indexes are picked far more often than high ones, like a handful of popular polls and choices
+    public static int skewed(Random random, int bound){
+        return (int) (bound * Math.pow(random.nextDouble(), 3));
+    }
+
+    private static <T> List<T> saveInChunks(List<T> entities, Function<List<T>, List<T>> saveAll){
+        List<T> saved = new ArrayList<>(entities.size());
+        for(int from = 0; from < entities.size(); from += SEED_CHUNK){
+            saved.addAll(saveAll.apply(entities.subList(from, Math.min(from + SEED_CHUNK, entities.size()))));
+        }
+        return saved;
+    }
+}
@@ -0,0 +1,84 @@
+package francislagueu.task.benchmark;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vote counter throughput with one counter row versus sharded counter rows, one committed UPDATE per vote,
+ * as the number of writer threads grows. Runs against H2 by default; point it at Postgres with
+ * -Dbenchmark.jdbcUrl, -Dbenchmark.username and -Dbenchmark.password to measure real row lock contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class ChoiceCounterContentionBenchmark {
+
+    private static final int[] WRITER_THREADS = {1, 2, 4, 8, 16, 32};
+
+    @Param({"1", "16"})
+    private int shards;
+
+    private HikariDataSource dataSource;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(System.getProperty("benchmark.jdbcUrl", "jdbc:h2:mem:counters;DB_CLOSE_DELAY=-1"));
+        config.setUsername(System.getProperty("benchmark.username", "sa"));
+        config.setPassword(System.getProperty("benchmark.password", ""));
+        config.setMaximumPoolSize(WRITER_THREADS[WRITER_THREADS.length - 1]);
+        dataSource = new HikariDataSource(config);
+
+        try(Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()){
+            statement.execute("DROP TABLE IF EXISTS bench_choice_vote_shards");
+            statement.execute("CREATE TABLE bench_choice_vote_shards (shard INT PRIMARY KEY, vote_count BIGINT NOT NULL)");
+            for(int shard = 0; shard < shards; shard++){
+                statement.execute("INSERT INTO bench_choice_vote_shards (shard, vote_count) VALUES (" + shard + ", 0)");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        dataSource.close();
+    }
+
+    @Benchmark
+    public int castVote() throws SQLException {
+        try(Connection connection = dataSource.getConnection();
+            PreparedStatement increment = connection.prepareStatement(
+                    "UPDATE bench_choice_vote_shards SET vote_count = vote_count + 1 WHERE shard = ?")){
+            increment.setInt(1, ThreadLocalRandom.current().nextInt(shards));
+            return increment.executeUpdate();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for(int threads : WRITER_THREADS){
+            Options options = new OptionsBuilder()
+                    .include(ChoiceCounterContentionBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .jvmArgsAppend(System.getProperties().stringPropertyNames().stream()
+                            .filter(name -> name.startsWith("benchmark."))
+                            .map(name -> "-D" + name + "=" + System.getProperty(name))
+                            .toArray(String[]::new))
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
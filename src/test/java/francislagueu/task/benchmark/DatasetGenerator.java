@@ -0,0 +1,471 @@
+package francislagueu.task.benchmark;
+
+import francislagueu.task.models.Vote;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk loads a synthetic dataset of -Dbenchmark.users users (200000 by default), -Dbenchmark.polls polls (100000
+ * by default) and about -Dbenchmark.votes votes (10 million by default) straight through JDBC. Poll popularity
+ * follows a Zipf law of exponent -Dbenchmark.pollPopularity (1.0 by default), and votes per user a Pareto law of
+ * shape -Dbenchmark.voterTail (1.2 by default, lower is heavier), so a few users vote in thousands of polls and
+ * most in a handful. Polls are created over the last -Dbenchmark.days days (90 by default) and run for up to
+ * seven days; the ones already over are loaded closed, with their results snapshot. -Dbenchmark.seed (42 by
+ * default) makes the dataset reproducible.
+ * <p>
+ * Rows go in with COPY on Postgres and with multi-row INSERTs elsewhere (-Dbenchmark.load=copy or insert
+ * forces one). Ids continue after the existing rows, and the pooled id sequences are moved past them as
+ * 001_pooled_id_sequences.sql does. Votes are generated twice from the same seeds: first to count them, so
+ * choices, results and user_stats are written with their final counts, then to write them.
+ * <p>
+ * Boots the application through BenchmarkApplication for its schema and DataSource. Load with the application
+ * stopped, and to keep the data pass -Dspring.datasource.url, -Dspring.datasource.username,
+ * -Dspring.datasource.password and -Dspring.jpa.hibernate.ddl-auto=update. Users are named synth followed by
+ * their id, with BenchmarkDataset.PASSWORD.
+ */
+public final class DatasetGenerator {
+
+    private static final int ROWS_PER_STATEMENT = 500;
+    private static final int ROWS_PER_COMMIT = 100_000;
+    private static final int COPY_BUFFER = 1 << 16;
+    private static final long MAX_POLL_SECONDS = TimeUnit.DAYS.toSeconds(7);
+
+    private final int users;
+    private final int polls;
+    private final long votes;
+    private final double pollPopularity;
+    private final double voterTail;
+    private final int days;
+    private final long seed;
+    private final String load;
+    private final long now = Instant.now().getEpochSecond();
+
+    private long userBase;
+    private long pollBase;
+    private long choiceBase;
+    private long voteBase;
+    private long voteCount;
+
+    private int[] pollCreators;
+    private long[] pollCreatedAt;
+    private long[] pollExpiresAt;
+    private int[] firstChoices;
+    private int[] popularPolls;
+    private double[] popularityCdf;
+    private int[] userVotes;
+    private int[] userPolls;
+    private long[] userVotesReceived;
+    private long[] choiceVotes;
+
+    private DatasetGenerator(int users, int polls, long votes, double pollPopularity, double voterTail, int days,
+                             long seed, String load) {
+        this.users = users;
+        this.polls = polls;
+        this.votes = votes;
+        this.pollPopularity = pollPopularity;
+        this.voterTail = voterTail;
+        this.days = days;
+        this.seed = seed;
+        this.load = load;
+    }
+
+    public static void main(String[] args) throws SQLException {
+        DatasetGenerator generator = new DatasetGenerator(
+                Integer.getInteger("benchmark.users", 200_000),
+                Integer.getInteger("benchmark.polls", 100_000),
+                Long.getLong("benchmark.votes", 10_000_000L),
+                Double.parseDouble(System.getProperty("benchmark.pollPopularity", "1.0")),
+                Double.parseDouble(System.getProperty("benchmark.voterTail", "1.2")),
+                Integer.getInteger("benchmark.days", 90),
+                Long.getLong("benchmark.seed", 42L),
+                System.getProperty("benchmark.load"));
+        // Keep the user_stats backfill from racing the load for users whose stats are not written yet
+        try(ConfigurableApplicationContext context = BenchmarkApplication.start("logging.level.root=WARN",
+                "app.userStatsBackfillDelayInMs=" + TimeUnit.DAYS.toMillis(1))){
+            generator.generate(context.getBean(DataSource.class));
+        }
+    }
+
+    private void generate(DataSource dataSource) throws SQLException {
+        long started = System.nanoTime();
+        planPolls();
+        planVoters();
+        forEachVote((user, poll, choice, votedAt) -> {
+            choiceVotes[choice]++;
+            userVotesReceived[pollCreators[poll]]++;
+            voteCount++;
+        });
+        System.out.printf("planned %d users, %d polls, %d choices and %d votes in %d ms%n", users, polls,
+                choiceVotes.length, voteCount, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+
+        try(Connection connection = dataSource.getConnection()){
+            connection.setAutoCommit(false);
+            boolean postgres = connection.getMetaData().getDatabaseProductName().toLowerCase().contains("postgres");
+            boolean copy = load == null ? postgres : "copy".equals(load);
+            userBase = maxId(connection, "user_entity");
+            pollBase = maxId(connection, "polls");
+            choiceBase = maxId(connection, "choices");
+            voteBase = maxId(connection, "votes");
+
+            long step = System.nanoTime();
+            writeUsers(connection, copy);
+            writePolls(connection, copy);
+            connection.commit();
+            System.out.printf("loaded users, polls and choices in %d ms%n", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - step));
+
+            step = System.nanoTime();
+            try(RowSink sink = sink(connection, copy, "votes", "id", "poll_id", "choice_id", "user_id", "created_at", "updated_at")){
+                long[] id = {voteBase};
+                forEachVote((user, poll, choice, votedAt) -> {
+                    Timestamp createdAt = new Timestamp(TimeUnit.SECONDS.toMillis(votedAt));
+                    sink.add(++id[0], pollBase + poll + 1, choiceBase + choice + 1, userBase + user + 1, createdAt, createdAt);
+                });
+            }
+            connection.commit();
+            long votesMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - step);
+            System.out.printf("loaded %d votes in %d ms (%d votes/s)%n", voteCount, votesMillis,
+                    voteCount * 1000 / Math.max(1, votesMillis));
+
+            writeResults(connection, copy);
+            advanceSequence(connection, postgres, "user_entity_seq", userBase + users);
+            advanceSequence(connection, postgres, "polls_seq", pollBase + polls);
+            advanceSequence(connection, postgres, "choices_seq", choiceBase + choiceVotes.length);
+            advanceSequence(connection, postgres, Vote.ID_SEQUENCE, voteBase + voteCount);
+            connection.commit();
+        }
+        System.out.printf("done in %d s%n", TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started));
+    }
+
+    private void planPolls(){
+        Random random = new Random(seed);
+        pollCreators = new int[polls];
+        pollCreatedAt = new long[polls];
+        pollExpiresAt = new long[polls];
+        firstChoices = new int[polls + 1];
+        long spread = TimeUnit.DAYS.toSeconds(days);
+        for(int poll = 0; poll < polls; poll++){
+            pollCreators[poll] = random.nextInt(users);
+            pollCreatedAt[poll] = now - (long) (random.nextDouble() * spread);
+            pollExpiresAt[poll] = pollCreatedAt[poll] + TimeUnit.HOURS.toSeconds(1)
+                    + (long) (random.nextDouble() * (MAX_POLL_SECONDS - TimeUnit.HOURS.toSeconds(1)));
+            firstChoices[poll + 1] = firstChoices[poll] + 2 + random.nextInt(5);
+        }
+        choiceVotes = new long[firstChoices[polls]];
+
+        // Popularity ranks are shuffled over the polls, so the popular ones are not simply the oldest
+        popularPolls = new int[polls];
+        for(int poll = 0; poll < polls; poll++){
+            popularPolls[poll] = poll;
+        }
+        for(int i = polls - 1; i > 0; i--){
+            int j = random.nextInt(i + 1);
+            int swap = popularPolls[i];
+            popularPolls[i] = popularPolls[j];
+            popularPolls[j] = swap;
+        }
+        popularityCdf = new double[polls];
+        double total = 0;
+        for(int rank = 0; rank < polls; rank++){
+            total += 1 / Math.pow(rank + 1, pollPopularity);
+            popularityCdf[rank] = total;
+        }
+        for(int rank = 0; rank < polls; rank++){
+            popularityCdf[rank] /= total;
+        }
+    }
+
+    private void planVoters(){
+        Random random = new Random(seed + 1);
+        double[] weights = new double[users];
+        double total = 0;
+        for(int user = 0; user < users; user++){
+            weights[user] = Math.pow(1 - random.nextDouble(), -1 / voterTail);
+            total += weights[user];
+        }
+        // Nobody votes in more than half the polls, which keeps picking distinct polls cheap
+        int maxVotes = Math.max(1, polls / 2);
+        userVotes = new int[users];
+        for(int user = 0; user < users; user++){
+            userVotes[user] = (int) Math.min(maxVotes, Math.round(votes * weights[user] / total));
+        }
+        userPolls = new int[users];
+        for(int poll = 0; poll < polls; poll++){
+            userPolls[pollCreators[poll]]++;
+        }
+        userVotesReceived = new long[users];
+    }
+
+    private void forEachVote(VoteConsumer consumer) throws SQLException {
+        Set<Integer> votedPolls = new HashSet<>();
+        for(int user = 0; user < users; user++){
+            SplittableRandom random = new SplittableRandom(seed * 31 + user);
+            votedPolls.clear();
+            for(int i = 0; i < userVotes[user]; i++){
+                int poll = popularPolls[rank(random.nextDouble())];
+                // Heavy voters run out of popular polls they have not voted in, so fall back to any poll
+                while(!votedPolls.add(poll)){
+                    poll = random.nextInt(polls);
+                }
+                int choices = firstChoices[poll + 1] - firstChoices[poll];
+                int choice = firstChoices[poll] + (int) (choices * Math.pow(random.nextDouble(), 2));
+                long votingEnds = Math.min(pollExpiresAt[poll], now);
+                long votedAt = pollCreatedAt[poll] + (long) (random.nextDouble() * (votingEnds - pollCreatedAt[poll]));
+                consumer.accept(user, poll, choice, votedAt);
+            }
+        }
+    }
+
+    private int rank(double probability){
+        int rank = Arrays.binarySearch(popularityCdf, probability);
+        return Math.min(polls - 1, rank >= 0 ? rank : -rank - 1);
+    }
+
+    private void writeUsers(Connection connection, boolean copy) throws SQLException {
+        String password = new BCryptPasswordEncoder().encode(BenchmarkDataset.PASSWORD);
+        Random random = new Random(seed + 2);
+        long spread = TimeUnit.DAYS.toSeconds(days);
+        try(RowSink sink = sink(connection, copy, "user_entity", "id", "uuid", "first_name", "last_name", "email",
+                "username", "password", "created_at", "updated_at")){
+            for(int user = 0; user < users; user++){
+                long id = userBase + user + 1;
+                Timestamp createdAt = new Timestamp(TimeUnit.SECONDS.toMillis(now - spread - (long) (random.nextDouble() * spread)));
+                sink.add(id, new UUID(random.nextLong(), random.nextLong()).toString(), "Synth", "User" + id,
+                        "synth" + id + "@example.com", "synth" + id, password, createdAt, createdAt);
+            }
+        }
+        long roleId = userRoleId(connection);
+        try(RowSink sink = sink(connection, copy, "user_roles", "user_id", "role_id")){
+            for(int user = 0; user < users; user++){
+                sink.add(userBase + user + 1, roleId);
+            }
+        }
+        try(RowSink sink = sink(connection, copy, "user_stats", "user_id", "poll_count", "vote_count", "votes_received")){
+            for(int user = 0; user < users; user++){
+                sink.add(userBase + user + 1, (long) userPolls[user], (long) userVotes[user], userVotesReceived[user]);
+            }
+        }
+    }
+
+    private void writePolls(Connection connection, boolean copy) throws SQLException {
+        Random random = new Random(seed + 3);
+        try(RowSink sink = sink(connection, copy, "polls", "id", "question", "expiration_date_time", "counter_shards",
+                "closed", "created_at", "updated_at", "created_by", "updated_by")){
+            for(int poll = 0; poll < polls; poll++){
+                Timestamp createdAt = new Timestamp(TimeUnit.SECONDS.toMillis(pollCreatedAt[poll]));
+                long creator = userBase + pollCreators[poll] + 1;
+                sink.add(pollBase + poll + 1, DatasetText.question(random),
+                        new Timestamp(TimeUnit.SECONDS.toMillis(pollExpiresAt[poll])), 0,
+                        pollExpiresAt[poll] <= now, createdAt, createdAt, creator, creator);
+            }
+        }
+        try(RowSink sink = sink(connection, copy, "choices", "id", "text", "poll_id", "vote_count")){
+            for(int poll = 0; poll < polls; poll++){
+                for(int choice = firstChoices[poll]; choice < firstChoices[poll + 1]; choice++){
+                    sink.add(choiceBase + choice + 1, DatasetText.choice(random), pollBase + poll + 1, choiceVotes[choice]);
+                }
+            }
+        }
+    }
+
+    private void writeResults(Connection connection, boolean copy) throws SQLException {
+        try(RowSink sink = sink(connection, copy, "poll_results", "poll_id", "total_votes", "closed_at")){
+            for(int poll = 0; poll < polls; poll++){
+                if(pollExpiresAt[poll] <= now){
+                    long total = 0;
+                    for(int choice = firstChoices[poll]; choice < firstChoices[poll + 1]; choice++){
+                        total += choiceVotes[choice];
+                    }
+                    sink.add(pollBase + poll + 1, total, new Timestamp(TimeUnit.SECONDS.toMillis(pollExpiresAt[poll])));
+                }
+            }
+        }
+        try(RowSink sink = sink(connection, copy, "poll_result_choices", "poll_id", "choice_id", "vote_count")){
+            for(int poll = 0; poll < polls; poll++){
+                if(pollExpiresAt[poll] <= now){
+                    for(int choice = firstChoices[poll]; choice < firstChoices[poll + 1]; choice++){
+                        sink.add(pollBase + poll + 1, choiceBase + choice + 1, choiceVotes[choice]);
+                    }
+                }
+            }
+        }
+    }
+
+    private static long maxId(Connection connection, String table) throws SQLException {
+        try(Statement statement = connection.createStatement();
+            ResultSet resultSet = statement.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + table)){
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private static long userRoleId(Connection connection) throws SQLException {
+        try(Statement statement = connection.createStatement()){
+            try(ResultSet resultSet = statement.executeQuery("SELECT id FROM roles WHERE name = 'ROLE_USER'")){
+                if(resultSet.next()){
+                    return resultSet.getLong(1);
+                }
+            }
+            statement.executeUpdate("INSERT INTO roles (name) VALUES ('ROLE_USER')");
+        }
+        return userRoleId(connection);
+    }
+
+    // Same position as 001_pooled_id_sequences.sql: the next pooled block starts past the largest id
+    private static void advanceSequence(Connection connection, boolean postgres, String sequence, long maxId) throws SQLException {
+        try(Statement statement = connection.createStatement()){
+            if(postgres){
+                statement.execute("SELECT setval('" + sequence + "', " + (maxId + 50) + ")");
+            }else{
+                statement.execute("ALTER SEQUENCE " + sequence + " RESTART WITH " + (maxId + 100));
+            }
+        }
+    }
+
+    private static RowSink sink(Connection connection, boolean copy, String table, String... columns) throws SQLException {
+        return copy ? new CopySink(connection, table, columns) : new InsertSink(connection, table, columns);
+    }
+
+    @FunctionalInterface
+    private interface VoteConsumer {
+        void accept(int user, int poll, int choice, long votedAt) throws SQLException;
+    }
+
+    private interface RowSink extends AutoCloseable {
+        void add(Object... values) throws SQLException;
+
+        @Override
+        void close() throws SQLException;
+    }
+
+    private static class InsertSink implements RowSink {
+        private final Connection connection;
+        private final String table;
+        private final String[] columns;
+        private final PreparedStatement statement;
+        private final Object[] rows;
+        private int buffered;
+        private long written;
+
+        InsertSink(Connection connection, String table, String[] columns) throws SQLException {
+            this.connection = connection;
+            this.table = table;
+            this.columns = columns;
+            this.statement = connection.prepareStatement(insert(ROWS_PER_STATEMENT));
+            this.rows = new Object[ROWS_PER_STATEMENT * columns.length];
+        }
+
+        @Override
+        public void add(Object... values) throws SQLException {
+            System.arraycopy(values, 0, rows, buffered * columns.length, columns.length);
+            if(++buffered == ROWS_PER_STATEMENT){
+                execute(statement);
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try{
+                if(buffered > 0){
+                    try(PreparedStatement remainder = connection.prepareStatement(insert(buffered))){
+                        execute(remainder);
+                    }
+                }
+            }finally {
+                statement.close();
+            }
+        }
+
+        private void execute(PreparedStatement statement) throws SQLException {
+            for(int i = 0; i < buffered * columns.length; i++){
+                statement.setObject(i + 1, rows[i]);
+            }
+            statement.executeUpdate();
+            long before = written;
+            written += buffered;
+            buffered = 0;
+            if(written / ROWS_PER_COMMIT != before / ROWS_PER_COMMIT){
+                connection.commit();
+            }
+        }
+
+        private String insert(int rowCount){
+            StringBuilder row = new StringBuilder("(");
+            for(int i = 0; i < columns.length; i++){
+                row.append(i == 0 ? "?" : ", ?");
+            }
+            row.append(')');
+            StringBuilder insert = new StringBuilder("INSERT INTO ").append(table)
+                    .append(" (").append(String.join(", ", columns)).append(") VALUES ");
+            for(int i = 0; i < rowCount; i++){
+                insert.append(i == 0 ? "" : ", ").append(row);
+            }
+            return insert.toString();
+        }
+    }
+
+    private static class CopySink implements RowSink {
+        private final CopyIn copyIn;
+        private final StringBuilder buffer = new StringBuilder(COPY_BUFFER + 1024);
+
+        CopySink(Connection connection, String table, String[] columns) throws SQLException {
+            this.copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(
+                    "COPY " + table + " (" + String.join(", ", columns) + ") FROM STDIN WITH (FORMAT csv)");
+        }
+
+        @Override
+        public void add(Object... values) throws SQLException {
+            for(int i = 0; i < values.length; i++){
+                if(i > 0){
+                    buffer.append(',');
+                }
+                Object value = values[i];
+                if(value instanceof String){
+                    buffer.append('"').append(((String) value).replace("\"", "\"\"")).append('"');
+                }else if(value != null){
+                    buffer.append(value);
+                }
+            }
+            buffer.append('\n');
+            if(buffer.length() >= COPY_BUFFER){
+                flush();
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try{
+                flush();
+                copyIn.endCopy();
+            }finally {
+                if(copyIn.isActive()){
+                    copyIn.cancelCopy();
+                }
+            }
+        }
+
+        private void flush() throws SQLException {
+            byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            copyIn.writeToCopy(bytes, 0, bytes.length);
+            buffer.setLength(0);
+        }
+    }
+}
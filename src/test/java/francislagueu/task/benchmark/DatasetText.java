@@ -0,0 +1,39 @@
+package francislagueu.task.benchmark;
+
+import java.util.Random;
+
+/**
+ * Poll questions and choices of realistic, varied length for seeding benchmarks.
+ */
+final class DatasetText {
+
+    private static final String[] OPENINGS = {
+            "Which", "What", "Who", "Where", "How often", "Should we", "Would you", "Is it time to"
+    };
+
+    private static final String[] WORDS = {
+            "framework", "release", "team", "language", "editor", "coffee", "meeting", "deploy", "weekend", "office",
+            "library", "database", "conference", "holiday", "lunch", "keyboard", "browser", "standup", "review", "city"
+    };
+
+    private DatasetText() {
+    }
+
+    static String question(Random random){
+        StringBuilder question = new StringBuilder(OPENINGS[random.nextInt(OPENINGS.length)]);
+        int words = 4 + random.nextInt(8);
+        for(int i = 0; i < words; i++){
+            question.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return question.append('?').toString();
+    }
+
+    static String choice(Random random){
+        StringBuilder choice = new StringBuilder(WORDS[random.nextInt(WORDS.length)]);
+        int words = random.nextInt(3);
+        for(int i = 0; i < words; i++){
+            choice.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return Character.toUpperCase(choice.charAt(0)) + choice.substring(1);
+    }
+}
@@ -0,0 +1,129 @@
+package francislagueu.task.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import francislagueu.task.controllers.PollController;
+import francislagueu.task.models.Poll;
+import francislagueu.task.models.User;
+import francislagueu.task.payload.ChoiceRequest;
+import francislagueu.task.payload.PollLength;
+import francislagueu.task.payload.PollRequest;
+import francislagueu.task.payload.VoteRequest;
+import francislagueu.task.repositories.UserRepository;
+import francislagueu.task.security.UserPrincipal;
+import francislagueu.task.services.PollExpiryScheduler;
+import francislagueu.task.services.PollService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution (look at p0.99) of reading a closed poll through PollController, from the poll queries
+ * and Jackson (expired poll cache disabled) versus the frozen JSON, for an anonymous reader that accepts gzip
+ * and for a reader whose vote is spliced in. Boots the application on H2 through BenchmarkApplication.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class ExpiredPollReadBenchmark {
+
+    private static final int CHOICES = 6;
+
+    @Param({"0", "67108864"})
+    private long cacheBytes;
+
+    @Param({"anonymous", "voter"})
+    private String reader;
+
+    private ConfigurableApplicationContext context;
+    private PollController pollController;
+    private ObjectMapper objectMapper;
+    private UserPrincipal currentUser;
+    private Long pollId;
+    private String path;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        context = BenchmarkApplication.start(
+                "app.expiredPollCacheMaxBytes=" + cacheBytes,
+                "logging.level.root=WARN");
+        pollController = context.getBean(PollController.class);
+        objectMapper = context.getBean(ObjectMapper.class);
+
+        User user = context.getBean(UserRepository.class)
+                .save(new User("First", "Last", "reader@example.com", "password", "reader"));
+        UserPrincipal principal = UserPrincipal.create(user);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+
+        PollService pollService = context.getBean(PollService.class);
+        Poll poll = pollService.createPoll(pollRequest());
+        pollId = poll.getId();
+        path = "/api/polls/" + pollId;
+        VoteRequest voteRequest = new VoteRequest();
+        voteRequest.setChoiceId(poll.getChoices().get(0).getId());
+        pollService.castVoteAndGetUpdatedPoll(pollId, voteRequest, principal);
+        SecurityContextHolder.clearContext();
+
+        context.getBean(JdbcTemplate.class).update("UPDATE polls SET expiration_date_time = ? WHERE id = ?",
+                Timestamp.from(Instant.now().minus(1, ChronoUnit.DAYS)), pollId);
+        context.getBean(PollExpiryScheduler.class).close(pollId);
+        currentUser = "voter".equals(reader) ? principal : null;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] getExpiredPoll() throws Exception {
+        ServletWebRequest webRequest = new ServletWebRequest(new MockHttpServletRequest("GET", path), new MockHttpServletResponse());
+        ResponseEntity<?> response = pollController.getPollById(currentUser, pollId, "gzip, deflate", webRequest);
+        Object body = response.getBody();
+        return body instanceof byte[] ? (byte[]) body : objectMapper.writeValueAsBytes(body);
+    }
+
+    private static PollRequest pollRequest(){
+        PollRequest pollRequest = new PollRequest();
+        pollRequest.setQuestion("Is an expired poll worth querying again?");
+        List<ChoiceRequest> choices = new ArrayList<>();
+        for(int i = 0; i < CHOICES; i++){
+            ChoiceRequest choice = new ChoiceRequest();
+            choice.setText("Choice " + i);
+            choices.add(choice);
+        }
+        pollRequest.setChoices(choices);
+        PollLength pollLength = new PollLength();
+        pollLength.setDays(1);
+        pollLength.setHours(0);
+        pollRequest.setPollLength(pollLength);
+        return pollRequest;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ExpiredPollReadBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,94 @@
+package francislagueu.task.benchmark;
+
+import francislagueu.task.models.Choice;
+import francislagueu.task.models.Poll;
+import francislagueu.task.models.User;
+import francislagueu.task.models.Vote;
+import francislagueu.task.payload.ChoiceRequest;
+import francislagueu.task.payload.PollLength;
+import francislagueu.task.payload.PollRequest;
+import francislagueu.task.repositories.UserRepository;
+import francislagueu.task.repositories.VoteRepository;
+import francislagueu.task.services.PollService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts the JDBC statements Hibernate prepares for one createPoll with six choices and for saving 10k votes,
+ * with insert batching off (one statement per row, as with identity ids) and on (pooled sequence ids).
+ */
+public class IdGenerationRoundTripBenchmark {
+
+    private static final int CHOICES = 6;
+    private static final int VOTES = 10_000;
+
+    public static void main(String[] args){
+        for(int batchSize : new int[]{1, 50}){
+            try(ConfigurableApplicationContext context = BenchmarkApplication.start(
+                    "spring.jpa.properties.hibernate.jdbc.batch_size=" + batchSize,
+                    "spring.jpa.properties.hibernate.generate_statistics=true")){
+                run(context, batchSize);
+            }
+        }
+    }
+
+    private static void run(ConfigurableApplicationContext context, int batchSize){
+        Statistics statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+        TransactionTemplate transaction = context.getBean(TransactionTemplate.class);
+        PollService pollService = context.getBean(PollService.class);
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        VoteRepository voteRepository = context.getBean(VoteRepository.class);
+
+        statistics.clear();
+        Poll poll = pollService.createPoll(pollRequest());
+        report(batchSize, "createPoll with " + CHOICES + " choices", statistics);
+
+        List<User> users = new ArrayList<>(VOTES);
+        for(int i = 0; i < VOTES; i++){
+            users.add(new User("First", "Last", "voter" + i + "@example.com", "password", "voter" + i));
+        }
+        List<User> voters = userRepository.saveAll(users);
+
+        statistics.clear();
+        transaction.execute(status -> {
+            List<Vote> votes = new ArrayList<>(VOTES);
+            for(int i = 0; i < VOTES; i++){
+                Vote vote = new Vote();
+                vote.setPoll(poll);
+                vote.setChoice(poll.getChoices().get(i % CHOICES));
+                vote.setUser(voters.get(i));
+                votes.add(vote);
+            }
+            return voteRepository.saveAll(votes);
+        });
+        report(batchSize, VOTES + " votes", statistics);
+    }
+
+    private static PollRequest pollRequest(){
+        PollRequest pollRequest = new PollRequest();
+        pollRequest.setQuestion("Which id generation strategy batches best?");
+        List<ChoiceRequest> choices = new ArrayList<>();
+        for(int i = 0; i < CHOICES; i++){
+            ChoiceRequest choice = new ChoiceRequest();
+            choice.setText("Choice " + i);
+            choices.add(choice);
+        }
+        pollRequest.setChoices(choices);
+        PollLength pollLength = new PollLength();
+        pollLength.setDays(1);
+        pollLength.setHours(0);
+        pollRequest.setPollLength(pollLength);
+        return pollRequest;
+    }
+
+    private static void report(int batchSize, String operation, Statistics statistics){
+        System.out.printf("batch_size=%-3d %-28s %6d statements, %6d inserts%n", batchSize, operation,
+                statistics.getPrepareStatementCount(), statistics.getEntityInsertCount());
+    }
+}
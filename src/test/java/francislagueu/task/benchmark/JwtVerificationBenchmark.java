@@ -0,0 +1,68 @@
+package francislagueu.task.benchmark;
+
+import francislagueu.task.security.JwtTokenProvider;
+import francislagueu.task.security.UserPrincipal;
+import francislagueu.task.security.VerifiedToken;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of authenticating one bearer token in JwtAuthenticationFilter: the old validateToken plus getUserIdFromJWT
+ * (two signature checks), a single parseToken, and verifyToken answered from the verified token cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class JwtVerificationBenchmark {
+
+    private JwtTokenProvider tokenProvider;
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        tokenProvider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(tokenProvider, "jwtSecret", "JWTSuperSecretKey");
+        ReflectionTestUtils.setField(tokenProvider, "jwtExpirationInMs", 604800000);
+        ReflectionTestUtils.setField(tokenProvider, "cacheMaxTokens", 100000L);
+        ReflectionTestUtils.setField(tokenProvider, "cacheTtlInMs", 300000L);
+        ReflectionTestUtils.invokeMethod(tokenProvider, "init");
+
+        UserPrincipal principal = new UserPrincipal(1L, UUID.randomUUID().toString(), "First", "Last", "user",
+                "user@example.com", "password", Collections.emptyList());
+        token = tokenProvider.generateToken(new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+    }
+
+    @Benchmark
+    public String validateThenGetUserId(){
+        return tokenProvider.validateToken(token) ? tokenProvider.getUserIdFromJWT(token) : null;
+    }
+
+    @Benchmark
+    public VerifiedToken parseOnce(){
+        return tokenProvider.parseToken(token);
+    }
+
+    @Benchmark
+    public VerifiedToken verifyCached(){
+        return tokenProvider.verifyToken(token);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(JwtVerificationBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,181 @@
+package francislagueu.task.benchmark;
+
+import francislagueu.task.models.Poll;
+import francislagueu.task.payload.ChoiceRequest;
+import francislagueu.task.payload.PollLength;
+import francislagueu.task.payload.PollRequest;
+import francislagueu.task.repositories.UserRepository;
+import francislagueu.task.security.UserPrincipal;
+import francislagueu.task.services.PollService;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Poll read latency before and during a login burst. -Dbenchmark.readers threads (4 by default) read one poll in
+ * a loop for -Dbenchmark.seconds seconds (10 by default) on their own, then again while
+ * -Dbenchmark.logins concurrent clients (400 by default, twice Tomcat's request threads) log in as fast as they
+ * can, each backing off for two seconds after a 503. Prints read latency percentiles for both phases and the
+ * login status codes; 503s are logins turned away by the password hashing executor. Pass
+ * -Dapp.passwordHashingQueueCapacity to change how many may wait.
+ */
+public class LoginBurstLoadTest {
+
+    private static final String PASSWORD = "password";
+    private static final long RETRY_AFTER_MS = 2000;
+    private static final ScheduledExecutorService RETRY = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "login-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static void main(String[] args) throws Exception {
+        int readers = Integer.getInteger("benchmark.readers", 4);
+        int logins = Integer.getInteger("benchmark.logins", 400);
+        int seconds = Integer.getInteger("benchmark.seconds", 10);
+
+        try(ConfigurableApplicationContext context = BenchmarkApplication.start("logging.level.root=WARN")){
+            String base = "http://localhost:" + context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            context.getBean(JdbcTemplate.class).update("INSERT INTO roles (id, name) VALUES (1, 'ROLE_USER')");
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            HttpResponse<String> registered = client.send(post(base + "/api/auth/register", "{\"firstName\":\"Load\",\"lastName\":\"Test\"," +
+                    "\"username\":\"loadtest\",\"email\":\"loadtest@example.com\",\"password\":\"" + PASSWORD + "\"}"),
+                    HttpResponse.BodyHandlers.ofString());
+            if(registered.statusCode() != 201){
+                throw new IllegalStateException("Could not register the load test user: " + registered.body());
+            }
+            UserPrincipal principal = UserPrincipal.create(context.getBean(UserRepository.class).findWithRolesByUuid(context.getBean(UserRepository.class).findByUsername("loadtest").get().getUuid()).get());
+            SecurityContextHolder.getContext().setAuthentication(
+                    new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+            Poll poll = context.getBean(PollService.class).createPoll(pollRequest());
+            SecurityContextHolder.clearContext();
+            URI read = URI.create(base + "/api/polls/" + poll.getId());
+
+            long[] quiet = readFor(client, read, readers, seconds);
+
+            Map<Integer, AtomicLong> loginStatuses = new ConcurrentHashMap<>();
+            Semaphore inFlight = new Semaphore(logins);
+            AtomicLong burstRunning = new AtomicLong(1);
+            Thread burst = new Thread(() -> {
+                HttpRequest login = post(base + "/api/auth/login", "{\"usernameOrEmail\":\"loadtest\",\"password\":\"" + PASSWORD + "\"}");
+                while(burstRunning.get() == 1){
+                    inFlight.acquireUninterruptibly();
+                    client.sendAsync(login, HttpResponse.BodyHandlers.discarding()).whenComplete((response, ex) -> {
+                        int status = ex != null ? -1 : response.statusCode();
+                        loginStatuses.computeIfAbsent(status, key -> new AtomicLong()).incrementAndGet();
+                        if(status == 503){
+                            // Back off like a well behaved client instead of retrying in a tight loop
+                            RETRY.schedule((Runnable) inFlight::release, RETRY_AFTER_MS, TimeUnit.MILLISECONDS);
+                        }else{
+                            inFlight.release();
+                        }
+                    });
+                }
+            }, "login-burst");
+            burst.start();
+            Thread.sleep(1000);
+            long[] duringBurst = readFor(client, read, readers, seconds);
+            burstRunning.set(0);
+            burst.join();
+            inFlight.tryAcquire(logins, 1, TimeUnit.MINUTES);
+
+            print("reads alone", quiet, seconds);
+            print("reads during " + logins + " concurrent logins", duringBurst, seconds);
+            System.out.printf("login responses by status: %s%n", loginStatuses);
+        }
+    }
+
+    private static long[] readFor(HttpClient client, URI read, int readers, int seconds) throws InterruptedException {
+        List<long[]> latencies = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(readers);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        for(int i = 0; i < readers; i++){
+            long[] readerLatencies = new long[1 << 20];
+            int index = latencies.size();
+            latencies.add(readerLatencies);
+            counts.add(0);
+            new Thread(() -> {
+                HttpRequest request = HttpRequest.newBuilder(read).build();
+                int count = 0;
+                try{
+                    while(System.nanoTime() < end && count < readerLatencies.length){
+                        long start = System.nanoTime();
+                        client.send(request, HttpResponse.BodyHandlers.discarding());
+                        readerLatencies[count++] = System.nanoTime() - start;
+                    }
+                }catch (Exception ex){
+                    System.out.printf("reader failed: %s%n", ex);
+                }finally {
+                    synchronized (counts){
+                        counts.set(index, count);
+                    }
+                    done.countDown();
+                }
+            }, "reader-" + i).start();
+        }
+        done.await();
+        int total = counts.stream().mapToInt(Integer::intValue).sum();
+        long[] all = new long[total];
+        int offset = 0;
+        for(int i = 0; i < readers; i++){
+            System.arraycopy(latencies.get(i), 0, all, offset, counts.get(i));
+            offset += counts.get(i);
+        }
+        Arrays.sort(all);
+        return all;
+    }
+
+    private static void print(String phase, long[] latencies, int seconds){
+        if(latencies.length == 0){
+            System.out.printf("%s: no reads completed%n", phase);
+            return;
+        }
+        System.out.printf("%s: %d reads/s, p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms%n", phase,
+                latencies.length / seconds, millis(latencies, 0.5), millis(latencies, 0.99), millis(latencies, 0.999),
+                latencies[latencies.length - 1] / 1e6);
+    }
+
+    private static double millis(long[] sorted, double percentile){
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)] / 1e6;
+    }
+
+    private static HttpRequest post(String uri, String body){
+        return HttpRequest.newBuilder(URI.create(uri)).header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+
+    private static PollRequest pollRequest(){
+        PollRequest pollRequest = new PollRequest();
+        pollRequest.setQuestion("Can reads stay fast while everybody logs in?");
+        List<ChoiceRequest> choices = new ArrayList<>();
+        for(int i = 0; i < 4; i++){
+            ChoiceRequest choice = new ChoiceRequest();
+            choice.setText("Choice " + i);
+            choices.add(choice);
+        }
+        pollRequest.setChoices(choices);
+        PollLength pollLength = new PollLength();
+        pollLength.setDays(1);
+        pollLength.setHours(0);
+        pollRequest.setPollLength(pollLength);
+        return pollRequest;
+    }
+}
@@ -0,0 +1,110 @@
+package francislagueu.task.benchmark;
+
+import francislagueu.task.security.JwtTokenProvider;
+import francislagueu.task.security.UserPrincipal;
+import francislagueu.task.security.VerifiedToken;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the always-on instrumentation, measured against the same work without it on a Prometheus registry with
+ * percentile histograms: a call through a @Timed proxy as on PollService, and verifyToken recorded into a timer as
+ * in JwtAuthenticationFilter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class MetricsOverheadBenchmark {
+
+    public static class Service {
+        public long work(long value){
+            return Long.rotateLeft(value * 0x9E3779B97F4A7C15L, 17);
+        }
+    }
+
+    public static class TimedService extends Service {
+        @Override
+        @Timed(value = "benchmark.service", histogram = true)
+        public long work(long value){
+            return super.work(value);
+        }
+    }
+
+    private Service service;
+    private Service timedService;
+    private JwtTokenProvider tokenProvider;
+    private Timer verifyTimer;
+    private String token;
+    private long value;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        PrometheusMeterRegistry meterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+
+        service = new Service();
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new TimedService());
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(new TimedAspect(meterRegistry));
+        timedService = proxyFactory.getProxy();
+
+        tokenProvider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(tokenProvider, "jwtSecret", "JWTSuperSecretKey");
+        ReflectionTestUtils.setField(tokenProvider, "jwtExpirationInMs", 604800000);
+        ReflectionTestUtils.setField(tokenProvider, "cacheMaxTokens", 100000L);
+        ReflectionTestUtils.setField(tokenProvider, "cacheTtlInMs", 300000L);
+        ReflectionTestUtils.invokeMethod(tokenProvider, "init");
+        verifyTimer = Timer.builder("auth.jwt.verify")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        UserPrincipal principal = new UserPrincipal(1L, UUID.randomUUID().toString(), "First", "Last", "user",
+                "user@example.com", "password", Collections.emptyList());
+        token = tokenProvider.generateToken(new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+    }
+
+    @Benchmark
+    public long serviceCall(){
+        return service.work(value++);
+    }
+
+    @Benchmark
+    public long timedServiceCall(){
+        return timedService.work(value++);
+    }
+
+    @Benchmark
+    public VerifiedToken verifyToken(){
+        return tokenProvider.verifyToken(token);
+    }
+
+    @Benchmark
+    public VerifiedToken timedVerifyToken(){
+        return verifyTimer.record(() -> tokenProvider.verifyToken(token));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(MetricsOverheadBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
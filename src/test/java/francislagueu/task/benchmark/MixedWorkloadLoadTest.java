@@ -0,0 +1,224 @@
+package francislagueu.task.benchmark;
+
+import francislagueu.task.models.User;
+import francislagueu.task.security.JwtTokenProvider;
+import francislagueu.task.security.UserPrincipal;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Macro benchmark of the whole HTTP stack. Boots the application on H2 through BenchmarkApplication, seeds it with
+ * BenchmarkDataset (-Dbenchmark.users, -Dbenchmark.polls and -Dbenchmark.votesPerUser, as in
+ * PollServiceBenchmark), then sends -Dbenchmark.rate requests per second (100 by default) for
+ * -Dbenchmark.warmupSeconds (10 by default) plus -Dbenchmark.seconds (30 by default), mixed by the weights of
+ * -Dbenchmark.mix (feed=45,poll=35,vote=15,login=3,register=2 by default): the first feed pages and skewed
+ * single polls read by signed in voters, votes by fresh voters, logins by seeded users and new registrations.
+ * <p>
+ * Requests are sent on a fixed schedule whether or not earlier ones have answered, and each latency is measured
+ * from the time its request was due, so a stall shows up in every request it held back (no coordinated
+ * omission). Prints per endpoint HdrHistogram percentiles of the measured seconds, error rates (anything but
+ * a 2xx) and response counts by status. -Dbenchmark.histogramDir also writes each endpoint's percentile
+ * distribution, in milliseconds, to a .hgrm file to plot or compare across builds.
+ */
+public class MixedWorkloadLoadTest {
+
+    private static final String DEFAULT_MIX = "feed=45,poll=35,vote=15,login=3,register=2";
+    private static final long DRAIN_TIMEOUT_MS = 30_000;
+
+    public static void main(String[] args) throws Exception {
+        int rate = Integer.getInteger("benchmark.rate", 100);
+        int warmupSeconds = Integer.getInteger("benchmark.warmupSeconds", 10);
+        int seconds = Integer.getInteger("benchmark.seconds", 30);
+        Map<String, Integer> mix = parseMix(System.getProperty("benchmark.mix", DEFAULT_MIX));
+        String histogramDir = System.getProperty("benchmark.histogramDir");
+
+        try(ConfigurableApplicationContext context = BenchmarkApplication.start("logging.level.root=WARN")){
+            String base = "http://localhost:" + context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            BenchmarkDataset dataset = BenchmarkDataset.seed(context, Integer.getInteger("benchmark.users", 2000),
+                    Integer.getInteger("benchmark.polls", 2000), Integer.getInteger("benchmark.votesPerUser", 25));
+            JwtTokenProvider tokenProvider = context.getBean(JwtTokenProvider.class);
+            String[] voterTokens = tokens(dataset.getVoters(), tokenProvider);
+            String[] freshVoterTokens = tokens(dataset.getFreshVoters(), tokenProvider);
+
+            AtomicLong votes = new AtomicLong();
+            AtomicLong registrations = new AtomicLong();
+            Map<String, Function<ThreadLocalRandom, HttpRequest>> requests = new LinkedHashMap<>();
+            requests.put("feed", random -> HttpRequest.newBuilder(URI.create(base + "/api/polls?page=" + random.nextInt(5) + "&size=30"))
+                    .header("Authorization", "Bearer " + voterTokens[random.nextInt(voterTokens.length)])
+                    .build());
+            requests.put("poll", random -> HttpRequest.newBuilder(URI.create(base + "/api/polls/"
+                    + dataset.getPollId(BenchmarkDataset.skewed(random, dataset.getPollCount()))))
+                    .header("Authorization", "Bearer " + voterTokens[random.nextInt(voterTokens.length)])
+                    .build());
+            requests.put("vote", random -> {
+                long vote = votes.getAndIncrement();
+                int poll = dataset.pollOf(vote);
+                Long[] choices = dataset.getChoiceIds(poll);
+                return post(base + "/api/polls/" + dataset.getPollId(poll) + "/votes",
+                        "{\"choiceId\":" + choices[random.nextInt(choices.length)] + "}",
+                        freshVoterTokens[dataset.freshVoterOf(vote)]);
+            });
+            requests.put("login", random -> post(base + "/api/auth/login", "{\"usernameOrEmail\":\"user"
+                    + random.nextInt(voterTokens.length + freshVoterTokens.length)
+                    + "\",\"password\":\"" + BenchmarkDataset.PASSWORD + "\"}", null));
+            requests.put("register", random -> {
+                long registration = registrations.getAndIncrement();
+                return post(base + "/api/auth/register", "{\"firstName\":\"Load\",\"lastName\":\"Test\",\"username\":\"load"
+                        + registration + "\",\"email\":\"load" + registration + "@example.com\",\"password\":\""
+                        + BenchmarkDataset.PASSWORD + "\"}", null);
+            });
+
+            List<String> schedule = new ArrayList<>();
+            for(Map.Entry<String, Integer> weight : mix.entrySet()){
+                if(!requests.containsKey(weight.getKey())){
+                    throw new IllegalArgumentException("Unknown request in benchmark.mix: " + weight.getKey());
+                }
+                for(int i = 0; i < weight.getValue(); i++){
+                    schedule.add(weight.getKey());
+                }
+            }
+            Map<String, Endpoint> endpoints = schedule.stream().distinct()
+                    .collect(Collectors.toMap(name -> name, name -> new Endpoint(), (a, b) -> a, LinkedHashMap::new));
+
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            AtomicLong inFlight = new AtomicLong();
+            long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+            long start = System.nanoTime();
+            long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+            long end = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+            long lateSends = 0;
+            for(long i = 0; ; i++){
+                long due = start + i * intervalNanos;
+                if(due >= end){
+                    break;
+                }
+                long wait;
+                while((wait = due - System.nanoTime()) > 0){
+                    LockSupport.parkNanos(wait);
+                }
+                if(System.nanoTime() - due > TimeUnit.MILLISECONDS.toNanos(10)){
+                    lateSends++;
+                }
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                String name = schedule.get(random.nextInt(schedule.size()));
+                Endpoint endpoint = endpoints.get(name);
+                boolean measured = due >= measureFrom;
+                inFlight.incrementAndGet();
+                client.sendAsync(requests.get(name).apply(random), HttpResponse.BodyHandlers.discarding())
+                        .whenComplete((response, ex) -> {
+                            if(measured){
+                                endpoint.record(System.nanoTime() - due, ex != null ? -1 : response.statusCode());
+                            }
+                            inFlight.decrementAndGet();
+                        });
+            }
+            long drainUntil = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+            while(inFlight.get() > 0 && System.currentTimeMillis() < drainUntil){
+                Thread.sleep(100);
+            }
+
+            System.out.printf("%d requests/s for %d s after %d s of warmup, mix %s%n", rate, seconds, warmupSeconds, mix);
+            System.out.printf("%-9s %8s %8s %10s %10s %10s %10s %10s  %s%n",
+                    "endpoint", "count", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "statuses");
+            Histogram all = new Histogram(3);
+            long allErrors = 0;
+            for(Map.Entry<String, Endpoint> entry : endpoints.entrySet()){
+                Endpoint endpoint = entry.getValue();
+                Histogram histogram = endpoint.latencies.getIntervalHistogram();
+                all.add(histogram);
+                allErrors += endpoint.errors.get();
+                print(entry.getKey(), histogram, endpoint.errors.get(), endpoint.statuses.toString());
+                if(histogramDir != null){
+                    write(new File(histogramDir, entry.getKey() + ".hgrm"), histogram);
+                }
+            }
+            print("all", all, allErrors, "");
+            if(histogramDir != null){
+                write(new File(histogramDir, "all.hgrm"), all);
+            }
+            if(inFlight.get() > 0){
+                System.out.printf("%d requests still unanswered after %d s, not counted%n", inFlight.get(), DRAIN_TIMEOUT_MS / 1000);
+            }
+            if(lateSends > 0){
+                System.out.printf("%d requests left more than 10 ms after they were due; the generator could not keep up%n", lateSends);
+            }
+        }
+    }
+
+    private static class Endpoint {
+        private final Recorder latencies = new Recorder(3);
+        private final AtomicLong errors = new AtomicLong();
+        private final Map<Integer, AtomicLong> statuses = new ConcurrentHashMap<>();
+
+        void record(long latencyNanos, int status){
+            latencies.recordValue(latencyNanos);
+            statuses.computeIfAbsent(status, key -> new AtomicLong()).incrementAndGet();
+            if(status < 200 || status >= 300){
+                errors.incrementAndGet();
+            }
+        }
+    }
+
+    private static Map<String, Integer> parseMix(String mix){
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for(String weight : mix.split(",")){
+            String[] parts = weight.trim().split("=");
+            weights.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    private static String[] tokens(List<User> users, JwtTokenProvider tokenProvider){
+        return users.stream().map(user -> tokenProvider.generateToken(UserPrincipal.create(user))).toArray(String[]::new);
+    }
+
+    private static HttpRequest post(String uri, String body, String token){
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(uri))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if(token != null){
+            request.header("Authorization", "Bearer " + token);
+        }
+        return request.build();
+    }
+
+    private static void print(String name, Histogram histogram, long errors, String statuses){
+        long count = histogram.getTotalCount();
+        System.out.printf("%-9s %8d %7.2f%% %10.2f %10.2f %10.2f %10.2f %10.2f  %s%n", name, count,
+                count == 0 ? 0.0 : 100.0 * errors / count,
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue()), statuses);
+    }
+
+    private static double millis(long nanos){
+        return nanos / 1e6;
+    }
+
+    private static void write(File file, Histogram histogram) throws IOException {
+        file.getParentFile().mkdirs();
+        try(PrintStream out = new PrintStream(file)){
+            histogram.outputPercentileDistribution(out, 1e6);
+        }
+    }
+}
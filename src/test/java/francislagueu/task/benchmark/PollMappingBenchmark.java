@@ -0,0 +1,113 @@
+package francislagueu.task.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import francislagueu.task.models.Choice;
+import francislagueu.task.models.Poll;
+import francislagueu.task.models.PollFeedRow;
+import francislagueu.task.models.User;
+import francislagueu.task.payload.PagedResponse;
+import francislagueu.task.payload.PollResponse;
+import francislagueu.task.util.ModelMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and, with -prof gc, allocation of turning polls into responses without a database: mapping one
+ * poll with ModelMapper.mapPollToPollResponse, mapping a 30 poll feed page from its flattened rows, and writing
+ * that page as a PagedResponse with an ObjectMapper configured like Spring Boot's.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class PollMappingBenchmark {
+
+    private static final int PAGE_SIZE = 30;
+
+    private ObjectMapper objectMapper;
+    private Poll poll;
+    private User creator;
+    private Map<Long, Long> choiceVotesMap;
+    private List<PollFeedRow> feedRows;
+    private PagedResponse<PollResponse> page;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        Random random = new Random(42);
+        creator = new User("Grace", "Hopper", "grace@example.com", "password", "grace");
+        creator.setId(1L);
+
+        feedRows = new ArrayList<>();
+        long choiceId = 1;
+        Instant createdAt = Instant.now().minus(Duration.ofDays(3));
+        for(long pollId = 1; pollId <= PAGE_SIZE; pollId++){
+            Poll poll = new Poll();
+            poll.setId(pollId);
+            poll.setQuestion(DatasetText.question(random));
+            poll.setCreatedAt(createdAt.plusSeconds(pollId * 60));
+            poll.setExpirationDateTime(poll.getCreatedAt().plus(Duration.ofDays(7)));
+            poll.setCreatedBy(creator.getId());
+            Map<Long, Long> votes = new HashMap<>();
+            int choices = 2 + random.nextInt(5);
+            for(int c = 0; c < choices; c++){
+                Choice choice = new Choice(DatasetText.choice(random));
+                choice.setId(choiceId++);
+                poll.addChoice(choice);
+                votes.put(choice.getId(), (long) random.nextInt(5000));
+            }
+            Long selectedChoiceId = random.nextBoolean() ? poll.getChoices().get(0).getId() : null;
+            for(Choice choice : poll.getChoices()){
+                feedRows.add(new PollFeedRow(poll.getId(), poll.getQuestion(), poll.getCreatedAt(), poll.getExpirationDateTime(),
+                        creator.getUuid(), creator.getUsername(), creator.getFirstName(), creator.getLastName(),
+                        choice.getId(), choice.getText(), votes.get(choice.getId()), selectedChoiceId,
+                        poll.getCreatedAt(), poll.getId()));
+            }
+            this.poll = poll;
+            this.choiceVotesMap = votes;
+        }
+        page = new PagedResponse<>(ModelMapper.mapPollFeedRowsToPollResponses(feedRows), 0, PAGE_SIZE,
+                PAGE_SIZE * 10, 10, false);
+    }
+
+    @Benchmark
+    public PollResponse mapPollToPollResponse(){
+        return ModelMapper.mapPollToPollResponse(poll, choiceVotesMap, creator, null);
+    }
+
+    @Benchmark
+    public List<PollResponse> mapFeedPage(){
+        return ModelMapper.mapPollFeedRowsToPollResponses(feedRows);
+    }
+
+    @Benchmark
+    public byte[] serializeFeedPage() throws Exception {
+        return objectMapper.writeValueAsBytes(page);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PollMappingBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
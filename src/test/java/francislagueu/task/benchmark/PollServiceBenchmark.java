@@ -0,0 +1,95 @@
+package francislagueu.task.benchmark;
+
+import francislagueu.task.payload.PagedResponse;
+import francislagueu.task.payload.PollResponse;
+import francislagueu.task.payload.VoteRequest;
+import francislagueu.task.security.UserPrincipal;
+import francislagueu.task.services.PollService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Throughput and, with -prof gc, allocation of PollService reads and votes against the application booted on H2
+ * through BenchmarkApplication and seeded by BenchmarkDataset with -Dbenchmark.users users (2000 by default),
+ * -Dbenchmark.polls polls (2000 by default) and -Dbenchmark.votesPerUser votes per voter (25 by default).
+ * Reads go to one of the first five feed pages and to polls picked with the dataset's skew, on behalf of a voter;
+ * castVote votes as the fresh voters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class PollServiceBenchmark {
+
+    private static final int PAGE_SIZE = 30;
+
+    private ConfigurableApplicationContext context;
+    private PollService pollService;
+    private BenchmarkDataset dataset;
+    private List<UserPrincipal> readers;
+    private List<UserPrincipal> voters;
+    private final AtomicLong votesCast = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        context = BenchmarkApplication.start("logging.level.root=WARN");
+        pollService = context.getBean(PollService.class);
+        dataset = BenchmarkDataset.seed(context, Integer.getInteger("benchmark.users", 2000),
+                Integer.getInteger("benchmark.polls", 2000), Integer.getInteger("benchmark.votesPerUser", 25));
+        readers = dataset.getVoters().stream().map(UserPrincipal::create).collect(Collectors.toList());
+        voters = dataset.getFreshVoters().stream().map(UserPrincipal::create).collect(Collectors.toList());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        context.close();
+    }
+
+    @Benchmark
+    public PagedResponse<PollResponse> getAllPolls(){
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return pollService.getAllPolls(readers.get(random.nextInt(readers.size())), random.nextInt(5), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public PollResponse getPollById(){
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return pollService.getPollById(dataset.getPollId(BenchmarkDataset.skewed(random, dataset.getPollCount())),
+                readers.get(random.nextInt(readers.size())));
+    }
+
+    // A run long enough to use up every (fresh voter, poll) pair fails
+    @Benchmark
+    public PollResponse castVote(){
+        long vote = votesCast.getAndIncrement();
+        int poll = dataset.pollOf(vote);
+        Long[] choices = dataset.getChoiceIds(poll);
+        VoteRequest voteRequest = new VoteRequest();
+        voteRequest.setChoiceId(choices[ThreadLocalRandom.current().nextInt(choices.length)]);
+        return pollService.castVoteAndGetUpdatedPoll(dataset.getPollId(poll), voteRequest, voters.get(dataset.freshVoterOf(vote)));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PollServiceBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .jvmArgsAppend(System.getProperties().stringPropertyNames().stream()
+                        .filter(name -> name.startsWith("benchmark."))
+                        .map(name -> "-D" + name + "=" + System.getProperty(name))
+                        .toArray(String[]::new))
+                .build();
+        new Runner(options).run();
+    }
+}
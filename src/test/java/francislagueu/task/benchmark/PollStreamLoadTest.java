@@ -0,0 +1,185 @@
+package francislagueu.task.benchmark;
+
+import francislagueu.task.models.Choice;
+import francislagueu.task.models.Poll;
+import francislagueu.task.payload.ChoiceRequest;
+import francislagueu.task.payload.PollLength;
+import francislagueu.task.payload.PollRequest;
+import francislagueu.task.services.ChoiceVoteCounter;
+import francislagueu.task.services.PollService;
+import francislagueu.task.services.VoteCastEvent;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Opens -Dbenchmark.subscribers live result streams on one poll (2000 by default), then records
+ * -Dbenchmark.votesPerSecond votes (10000 by default) for -Dbenchmark.seconds seconds (10 by default) straight
+ * through the vote counter and event publisher. Reports how many tally frames each subscriber received, which
+ * shows the coalescing, and how long after the last vote every subscriber had seen the final total.
+ */
+public class PollStreamLoadTest {
+
+    private static final Pattern TOTAL_VOTES = Pattern.compile("\"totalVotes\":(\\d+)");
+
+    public static void main(String[] args) throws Exception {
+        int subscribers = Integer.getInteger("benchmark.subscribers", 2000);
+        int votesPerSecond = Integer.getInteger("benchmark.votesPerSecond", 10_000);
+        int seconds = Integer.getInteger("benchmark.seconds", 10);
+
+        try(ConfigurableApplicationContext context = BenchmarkApplication.start(
+                "app.pollStreamMaxSubscribers=" + subscribers,
+                "app.pollStreamMaxSubscribersPerPoll=" + subscribers,
+                "server.tomcat.max-connections=" + (subscribers + 100))){
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            Poll poll = context.getBean(PollService.class).createPoll(pollRequest());
+            URI stream = URI.create("http://localhost:" + port + "/api/polls/" + poll.getId() + "/stream");
+
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            CountDownLatch connected = new CountDownLatch(subscribers);
+            List<TallySubscriber> tallySubscribers = new ArrayList<>(subscribers);
+            long connectStart = System.nanoTime();
+            for(int i = 0; i < subscribers; i++){
+                TallySubscriber subscriber = new TallySubscriber(connected);
+                tallySubscribers.add(subscriber);
+                client.sendAsync(HttpRequest.newBuilder(stream).header("Accept", "text/event-stream").build(),
+                        HttpResponse.BodyHandlers.fromLineSubscriber(subscriber));
+            }
+            if(!connected.await(2, TimeUnit.MINUTES)){
+                System.out.printf("only %d of %d subscribers connected%n", subscribers - connected.getCount(), subscribers);
+                return;
+            }
+            System.out.printf("%d subscribers connected in %d ms%n", subscribers,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart));
+            tallySubscribers.forEach(TallySubscriber::resetFrames);
+
+            ChoiceVoteCounter choiceVoteCounter = context.getBean(ChoiceVoteCounter.class);
+            List<Choice> choices = poll.getChoices();
+            long votes = 0;
+            long voteStart = System.nanoTime();
+            for(int tick = 0; tick < seconds * 100; tick++){
+                Choice choice = choices.get(tick % choices.size());
+                int tickVotes = votesPerSecond / 100;
+                choiceVoteCounter.add(choice.getId(), 0, tickVotes);
+                for(int i = 0; i < tickVotes; i++){
+                    context.publishEvent(new VoteCastEvent(poll.getId(), choice.getId()));
+                }
+                votes += tickVotes;
+                long nextTick = voteStart + TimeUnit.MILLISECONDS.toNanos(10L * (tick + 1));
+                long sleep = nextTick - System.nanoTime();
+                if(sleep > 0){
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                }
+            }
+            long lastVote = System.nanoTime();
+            double voteSeconds = (lastVote - voteStart) / 1e9;
+
+            long deadline = lastVote + TimeUnit.SECONDS.toNanos(30);
+            long converged;
+            while(true){
+                long finalVotes = votes;
+                if(tallySubscribers.stream().allMatch(subscriber -> subscriber.getTotalVotes() == finalVotes)){
+                    converged = System.nanoTime();
+                    break;
+                }
+                if(System.nanoTime() > deadline){
+                    converged = -1;
+                    break;
+                }
+                TimeUnit.MILLISECONDS.sleep(5);
+            }
+
+            long frames = tallySubscribers.stream().mapToLong(TallySubscriber::getFrames).sum();
+            System.out.printf("%d votes in %.1f s (%.0f votes/s)%n", votes, voteSeconds, votes / voteSeconds);
+            System.out.printf("%.1f tally frames per subscriber per second, %d frames written in total%n",
+                    frames / (double) subscribers / voteSeconds, frames);
+            System.out.printf("%d subscribers lost their stream%n", tallySubscribers.stream().filter(TallySubscriber::isFailed).count());
+            System.out.println(converged < 0 ? "subscribers did not all see the final total within 30 s"
+                    : "all subscribers saw the final total " + TimeUnit.NANOSECONDS.toMillis(converged - lastVote) + " ms after the last vote");
+        }
+    }
+
+    private static PollRequest pollRequest(){
+        PollRequest pollRequest = new PollRequest();
+        pollRequest.setQuestion("How many subscribers can one poll stream to?");
+        List<ChoiceRequest> choices = new ArrayList<>();
+        for(int i = 0; i < 4; i++){
+            ChoiceRequest choice = new ChoiceRequest();
+            choice.setText("Choice " + i);
+            choices.add(choice);
+        }
+        pollRequest.setChoices(choices);
+        PollLength pollLength = new PollLength();
+        pollLength.setDays(1);
+        pollLength.setHours(0);
+        pollRequest.setPollLength(pollLength);
+        return pollRequest;
+    }
+
+    private static class TallySubscriber implements Flow.Subscriber<String> {
+        private final CountDownLatch connected;
+        private final AtomicLong frames = new AtomicLong();
+        private volatile long totalVotes = -1;
+        private volatile boolean failed;
+
+        TallySubscriber(CountDownLatch connected) {
+            this.connected = connected;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if(!line.startsWith("data:")){
+                return;
+            }
+            Matcher matcher = TOTAL_VOTES.matcher(line);
+            if(matcher.find()){
+                if(totalVotes < 0){
+                    connected.countDown();
+                }
+                totalVotes = Long.parseLong(matcher.group(1));
+                frames.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            failed = true;
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        long getFrames() {
+            return frames.get();
+        }
+
+        void resetFrames() {
+            frames.set(0);
+        }
+
+        long getTotalVotes() {
+            return totalVotes;
+        }
+
+        boolean isFailed() {
+            return failed;
+        }
+    }
+}
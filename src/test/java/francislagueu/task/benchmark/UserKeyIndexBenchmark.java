@@ -0,0 +1,87 @@
+package francislagueu.task.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Size of the unique (poll_id, user_id) vote index and latency of the duplicate vote lookup it serves, with
+ * user_id as a UUID string versus a bigint key. Needs Postgres: set -Dbenchmark.jdbcUrl, -Dbenchmark.username
+ * and -Dbenchmark.password, and -Dbenchmark.votes for the number of rows (1 million by default).
+ */
+public class UserKeyIndexBenchmark {
+
+    private static final int POLLS = 1000;
+    private static final int LOOKUPS = 20_000;
+
+    public static void main(String[] args) throws SQLException {
+        long votes = Long.getLong("benchmark.votes", 1_000_000);
+        try(Connection connection = DriverManager.getConnection(
+                System.getProperty("benchmark.jdbcUrl", "jdbc:postgresql://localhost:5432/tuto"),
+                System.getProperty("benchmark.username", "Francis"),
+                System.getProperty("benchmark.password", ""))){
+            run(connection, "uuid", "varchar(36)", "md5('user' || (i / " + POLLS + "))::uuid::text", votes);
+            run(connection, "bigint", "bigint", "i / " + POLLS, votes);
+        }
+    }
+
+    private static void run(Connection connection, String keyType, String columnType, String userKey, long votes) throws SQLException {
+        String table = "bench_votes_" + keyType;
+        try(Statement statement = connection.createStatement()){
+            statement.execute("DROP TABLE IF EXISTS " + table);
+            statement.execute("CREATE TABLE " + table + " (id bigint PRIMARY KEY, poll_id bigint NOT NULL, user_id "
+                    + columnType + " NOT NULL, CONSTRAINT " + table + "_poll_user_key UNIQUE (poll_id, user_id))");
+            statement.execute("INSERT INTO " + table + " SELECT i, i % " + POLLS + ", " + userKey
+                    + " FROM generate_series(1, " + votes + ") AS i");
+            statement.execute("ANALYZE " + table);
+        }
+
+        List<Object[]> keys = new ArrayList<>(LOOKUPS);
+        try(Statement statement = connection.createStatement();
+            ResultSet sample = statement.executeQuery("SELECT poll_id, user_id FROM " + table + " ORDER BY random() LIMIT " + LOOKUPS)){
+            while(sample.next()){
+                keys.add(new Object[]{sample.getLong(1), sample.getObject(2)});
+            }
+        }
+
+        long[] latencies = new long[keys.size()];
+        try(PreparedStatement lookup = connection.prepareStatement("SELECT id FROM " + table + " WHERE poll_id = ? AND user_id = ?")){
+            lookupAll(lookup, keys, latencies);
+            lookupAll(lookup, keys, latencies);
+        }
+        Arrays.sort(latencies);
+
+        try(PreparedStatement size = connection.prepareStatement("SELECT pg_relation_size(?::regclass), pg_total_relation_size(?::regclass)")){
+            size.setString(1, table + "_poll_user_key");
+            size.setString(2, table);
+            try(ResultSet sizes = size.executeQuery()){
+                sizes.next();
+                System.out.printf("user_id %-6s %,d votes: vote index %,d kB, table with indexes %,d kB, lookup p50 %d us, p99 %d us%n",
+                        keyType, votes, sizes.getLong(1) / 1024, sizes.getLong(2) / 1024,
+                        latencies[latencies.length / 2] / 1000, latencies[latencies.length * 99 / 100] / 1000);
+            }
+        }
+
+        try(Statement statement = connection.createStatement()){
+            statement.execute("DROP TABLE " + table);
+        }
+    }
+
+    private static void lookupAll(PreparedStatement lookup, List<Object[]> keys, long[] latencies) throws SQLException {
+        for(int i = 0; i < keys.size(); i++){
+            long start = System.nanoTime();
+            lookup.setLong(1, (Long) keys.get(i)[0]);
+            lookup.setObject(2, keys.get(i)[1]);
+            try(ResultSet vote = lookup.executeQuery()){
+                vote.next();
+            }
+            latencies[i] = System.nanoTime() - start;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package francislagueu.task.config;
+
+import francislagueu.task.util.SqlStatementStats;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.web.servlet.ResultMatcher;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * MockMvc expectation on the JDBC statements a request ran, as counted by SqlStatementFilter: fails when an
+ * endpoint goes over its budget, typically because a refactoring added a query per row.
+ */
+public final class StatementBudget {
+
+    private StatementBudget() {
+    }
+
+    public static ResultMatcher atMost(int statements){
+        return result -> {
+            MockHttpServletRequest request = result.getRequest();
+            String endpoint = request.getMethod() + " " + request.getRequestURI();
+            SqlStatementStats stats = (SqlStatementStats) request.getAttribute(SqlStatementFilter.STATS_ATTRIBUTE);
+            assertNotNull(endpoint + " did not go through SqlStatementFilter", stats);
+            assertTrue(endpoint + " ran " + stats.getStatements() + " statements, over its budget of " + statements,
+                    stats.getStatements() <= statements);
+        };
+    }
+}
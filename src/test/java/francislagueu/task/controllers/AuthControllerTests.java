@@ -0,0 +1,148 @@
+package francislagueu.task.controllers;
+
+import francislagueu.task.models.Role;
+import francislagueu.task.models.RoleName;
+import francislagueu.task.models.User;
+import francislagueu.task.models.UserStats;
+import francislagueu.task.repositories.RoleRepository;
+import francislagueu.task.repositories.UserRepository;
+import francislagueu.task.repositories.UserStatsRepository;
+import francislagueu.task.security.PasswordHashingExecutor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AuthenticationEventPublisher;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:authcontroller;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureMockMvc
+public class AuthControllerTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private UserStatsRepository userStatsRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @SpyBean
+    private AuthenticationEventPublisher authenticationEventPublisher;
+
+    @SpyBean
+    private PasswordHashingExecutor passwordHashingExecutor;
+
+    @Before
+    public void setUp(){
+        if(userRepository.findByUsername("ada").isPresent()){
+            return;
+        }
+        Role userRole = roleRepository.findByName(RoleName.ROLE_USER)
+                .orElseGet(() -> roleRepository.save(new Role(RoleName.ROLE_USER)));
+        User user = new User("Ada", "Lovelace", "ada@example.com", passwordEncoder.encode("password"), "ada");
+        user.setRoles(Collections.singleton(userRole));
+        user = userRepository.save(user);
+        userStatsRepository.save(new UserStats(user.getId()));
+    }
+
+    @Test
+    public void publishesASuccessEventForAValidLogin() throws Exception {
+        MvcResult result = mockMvc.perform(post("/api/auth/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"usernameOrEmail\":\"ada\",\"password\":\"password\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accessToken").exists());
+
+        verify(authenticationEventPublisher).publishAuthenticationSuccess(any());
+        verify(authenticationEventPublisher, never()).publishAuthenticationFailure(any(), any());
+    }
+
+    @Test
+    public void publishesAFailureEventForAWrongPassword() throws Exception {
+        MvcResult result = mockMvc.perform(post("/api/auth/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"usernameOrEmail\":\"ada\",\"password\":\"wrong-password\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isUnauthorized());
+
+        verify(authenticationEventPublisher).publishAuthenticationFailure(isA(BadCredentialsException.class), any());
+        verify(authenticationEventPublisher, never()).publishAuthenticationSuccess(any());
+    }
+
+    @Test
+    public void publishesAFailureEventForAnUnknownUsername() throws Exception {
+        MvcResult result = mockMvc.perform(post("/api/auth/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"usernameOrEmail\":\"nobody\",\"password\":\"password\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isUnauthorized());
+
+        verify(authenticationEventPublisher).publishAuthenticationFailure(isA(BadCredentialsException.class), any());
+        verify(authenticationEventPublisher, never()).publishAuthenticationSuccess(any());
+    }
+
+    @Test
+    public void answersARegistrationThatLostTheRaceForItsUsernameWithABadRequest() throws Exception {
+        Role userRole = roleRepository.findByName(RoleName.ROLE_USER).get();
+        // The other registration commits while this one's password is hashing
+        doAnswer(invocation -> {
+            User winner = new User("Grace", "Hopper", "grace@example.com", passwordEncoder.encode("password"), "grace");
+            winner.setRoles(Collections.singleton(userRole));
+            userRepository.save(winner);
+            return invocation.callRealMethod();
+        }).when(passwordHashingExecutor).submit(any());
+
+        MvcResult result = mockMvc.perform(post("/api/auth/register")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"firstName\":\"Grace\",\"lastName\":\"Murray\",\"username\":\"grace\"," +
+                        "\"email\":\"murray@example.com\",\"password\":\"password\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.success").value(false))
+                .andExpect(jsonPath("$.message").value("Username is already taken"));
+    }
+}
@@ -0,0 +1,107 @@
+package francislagueu.task.controllers;
+
+import francislagueu.task.benchmark.BenchmarkDataset;
+import francislagueu.task.models.User;
+import francislagueu.task.security.JwtTokenProvider;
+import francislagueu.task.security.UserPrincipal;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static francislagueu.task.config.StatementBudget.atMost;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:statementbudget;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "app.sqlStatementHeaders=true"
+})
+@AutoConfigureMockMvc
+public class StatementBudgetTests {
+
+    private static BenchmarkDataset dataset;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JwtTokenProvider tokenProvider;
+
+    private User voter;
+    private String voterToken;
+
+    @Before
+    public void setUp() throws Exception {
+        if(dataset == null){
+            dataset = BenchmarkDataset.seed(context, 20, 40, 10);
+        }
+        voter = dataset.getVoters().get(0);
+        voterToken = bearer(voter);
+        // Loads the voter's principal into the cache, which later requests read it from
+        mockMvc.perform(get("/api/user/me").header("Authorization", voterToken)).andExpect(status().isOk());
+    }
+
+    @Test
+    public void readsAFeedPageInOneStatementAndACount() throws Exception {
+        mockMvc.perform(get("/api/polls").param("size", "30"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("X-SQL-Statements"))
+                .andExpect(atMost(2));
+        mockMvc.perform(get("/api/polls").param("size", "30").header("Authorization", voterToken))
+                .andExpect(status().isOk())
+                .andExpect(atMost(2));
+    }
+
+    @Test
+    public void readsAUsersPollsAndVotesWithoutAQueryPerPoll() throws Exception {
+        mockMvc.perform(get("/api/users/{username}/polls", voter.getUsername()).header("Authorization", voterToken))
+                .andExpect(status().isOk())
+                .andExpect(atMost(3));
+        mockMvc.perform(get("/api/users/{username}/votes", voter.getUsername()).header("Authorization", voterToken))
+                .andExpect(status().isOk())
+                .andExpect(atMost(3));
+    }
+
+    @Test
+    public void readsAPollWithinBudget() throws Exception {
+        // The first read loads the poll's vote tally with one more query, later reads take it from memory
+        mockMvc.perform(get("/api/polls/{pollId}", dataset.getPollId(0)).header("Authorization", voterToken))
+                .andExpect(status().isOk())
+                .andExpect(atMost(5));
+        mockMvc.perform(get("/api/polls/{pollId}", dataset.getPollId(0)).header("Authorization", voterToken))
+                .andExpect(status().isOk())
+                .andExpect(atMost(4));
+    }
+
+    @Test
+    public void castsAVoteWithinBudget() throws Exception {
+        User freshVoter = dataset.getFreshVoters().get(0);
+        mockMvc.perform(get("/api/user/me").header("Authorization", bearer(freshVoter))).andExpect(status().isOk());
+        mockMvc.perform(post("/api/polls/{pollId}/votes", dataset.getPollId(1))
+                .header("Authorization", bearer(freshVoter))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"choiceId\":" + dataset.getChoiceIds(1)[0] + "}"))
+                .andExpect(status().isOk())
+                .andExpect(atMost(8));
+    }
+
+    private String bearer(User user){
+        return "Bearer " + tokenProvider.generateToken(UserPrincipal.create(user));
+    }
+}
@@ -0,0 +1,204 @@
+package francislagueu.task.repositories;
+
+import francislagueu.task.models.Choice;
+import francislagueu.task.models.ChoiceVoteShard;
+import francislagueu.task.models.Poll;
+import francislagueu.task.models.PollFeedRow;
+import francislagueu.task.models.PollResult;
+import francislagueu.task.models.User;
+import francislagueu.task.models.Vote;
+import francislagueu.task.payload.PollResponse;
+import francislagueu.task.util.FeedCursor;
+import francislagueu.task.util.ModelMapper;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+public class PollRepositoryTests {
+
+    private static final Instant START = Instant.parse("2019-04-01T00:00:00Z");
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private PollRepository pollRepository;
+
+    private Statistics statistics;
+    private User creator;
+    private User viewer;
+    private List<Poll> polls = new ArrayList<>();
+
+    @Before
+    public void setUp(){
+        statistics = entityManager.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        creator = persist(new User("Ada", "Lovelace", "ada@example.com", "password", "ada"));
+        viewer = persist(new User("Alan", "Turing", "alan@example.com", "password", "alan"));
+
+        for(int i = 0; i < 5; i++){
+            Poll poll = new Poll();
+            poll.setQuestion("Question " + i);
+            poll.setExpirationDateTime(START.plus(Duration.ofDays(365 * 100)));
+            poll.setCreatedAt(START.plusSeconds(i));
+            poll.setUpdatedAt(START.plusSeconds(i));
+            poll.setCreatedBy(creator.getId());
+            for(int c = 0; c < 3; c++){
+                Choice choice = new Choice("Choice " + c);
+                choice.setVoteCount(c);
+                poll.addChoice(choice);
+            }
+            poll.setCounterShards(i == 4 ? 2 : 0);
+            entityManager.persist(poll);
+            if(i == 4){
+                ChoiceVoteShard shard = new ChoiceVoteShard(poll, poll.getChoices().get(0), 1);
+                shard.setVoteCount(10);
+                entityManager.persist(shard);
+            }
+            polls.add(poll);
+        }
+        Map<Vote, Instant> votedAt = new LinkedHashMap<>();
+        votedAt.put(vote(polls.get(3), 2), START.plusSeconds(10));
+        votedAt.put(vote(polls.get(0), 1), START.plusSeconds(20));
+        votedAt.put(vote(polls.get(1), 0), START.plusSeconds(5));
+        entityManager.flush();
+
+        // Written after the flush: once an application context with auditing has run in this JVM, the auditing
+        // listener replaces any timestamp set on the entity with the time of the insert
+        for(int i = 0; i < polls.size(); i++){
+            writeCreatedAt("polls", polls.get(i).getId(), START.plusSeconds(i));
+        }
+        votedAt.forEach((vote, createdAt) -> writeCreatedAt("votes", vote.getId(), createdAt));
+        entityManager.clear();
+    }
+
+    @Test
+    public void readsAFeedPageInOneStatement(){
+        statistics.clear();
+        List<PollResponse> polls = ModelMapper.mapPollFeedRowsToPollResponses(
+                pollRepository.findFeedRows(null, viewer.getId(), null, 0, 30));
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(5, polls.size());
+
+        PollResponse sharded = polls.get(0);
+        assertEquals("Question 4", sharded.getQuestion());
+        assertEquals(3, sharded.getChoices().size());
+        assertEquals(10, sharded.getChoices().get(0).getVoteCount());
+        assertEquals(Long.valueOf(13), sharded.getTotalVotes());
+        assertEquals(creator.getUuid(), sharded.getCreatedBy().getId());
+        assertNull(sharded.getSelectedChoice());
+
+        assertEquals(this.polls.get(3).getId(), polls.get(1).getId());
+        assertEquals(this.polls.get(3).getChoices().get(2).getId(), polls.get(1).getSelectedChoice());
+    }
+
+    @Test
+    public void readsVotedPollsByVoteTimeInOneStatementPerPage(){
+        statistics.clear();
+        List<PollFeedRow> rows = pollRepository.findVotedFeedRows(viewer.getId(), viewer.getId(), null, 0, 2);
+        List<PollResponse> firstPage = ModelMapper.mapPollFeedRowsToPollResponses(rows);
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(Arrays.asList(polls.get(0).getId(), polls.get(3).getId()),
+                firstPage.stream().map(PollResponse::getId).collect(Collectors.toList()));
+        assertEquals(polls.get(0).getChoices().get(1).getId(), firstPage.get(0).getSelectedChoice());
+
+        PollFeedRow last = rows.get(rows.size() - 1);
+        statistics.clear();
+        List<PollResponse> secondPage = ModelMapper.mapPollFeedRowsToPollResponses(pollRepository.findVotedFeedRows(
+                viewer.getId(), null, new FeedCursor(last.getCursorCreatedAt(), last.getCursorId()), 0, 2));
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(1, secondPage.size());
+        assertEquals(polls.get(1).getId(), secondPage.get(0).getId());
+        assertNull(secondPage.get(0).getSelectedChoice());
+    }
+
+    @Test
+    public void readsEveryCursorPageInOneStatement(){
+        FeedCursor after = null;
+        for(int page = 0; page < 3; page++){
+            statistics.clear();
+            List<PollResponse> polls = ModelMapper.mapPollFeedRowsToPollResponses(
+                    pollRepository.findFeedRows(creator.getId(), null, after, 0, 2));
+
+            assertEquals(1, statistics.getPrepareStatementCount());
+            assertEquals(page < 2 ? 2 : 1, polls.size());
+            assertEquals("Question " + (4 - page * 2), polls.get(0).getQuestion());
+
+            PollResponse last = polls.get(polls.size() - 1);
+            after = new FeedCursor(last.getCreationDateTime(), last.getId());
+        }
+    }
+
+    @Test
+    public void readsClosedPollCountsFromTheResultsSnapshot(){
+        Poll poll = polls.get(2);
+        Map<Long, Long> finalVotes = new HashMap<>();
+        poll.getChoices().forEach(choice -> finalVotes.put(choice.getId(), 7L));
+        assertEquals(1, pollRepository.close(poll.getId()));
+        assertEquals(0, pollRepository.close(poll.getId()));
+        entityManager.persist(new PollResult(poll.getId(), finalVotes, START));
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics.clear();
+        List<PollResponse> polls = ModelMapper.mapPollFeedRowsToPollResponses(
+                pollRepository.findFeedRows(null, null, null, 0, 30));
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        PollResponse closed = polls.get(2);
+        assertEquals(poll.getId(), closed.getId());
+        assertEquals(Long.valueOf(21), closed.getTotalVotes());
+        assertEquals(Long.valueOf(3), polls.get(1).getTotalVotes());
+    }
+
+    private Vote vote(Poll poll, int choice){
+        Vote vote = new Vote();
+        vote.setPoll(poll);
+        vote.setChoice(poll.getChoices().get(choice));
+        vote.setUser(viewer);
+        vote.setCreatedAt(START);
+        vote.setUpdatedAt(START);
+        return entityManager.persist(vote);
+    }
+
+    private void writeCreatedAt(String table, Long id, Instant createdAt){
+        entityManager.getEntityManager()
+                .createNativeQuery("UPDATE " + table + " SET created_at = ?1, updated_at = ?1 WHERE id = ?2")
+                .setParameter(1, Timestamp.from(createdAt))
+                .setParameter(2, id)
+                .executeUpdate();
+    }
+
+    private User persist(User user){
+        user.setCreatedAt(START);
+        user.setUpdatedAt(START);
+        return entityManager.persist(user);
+    }
+}
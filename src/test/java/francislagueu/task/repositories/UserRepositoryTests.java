@@ -0,0 +1,170 @@
+package francislagueu.task.repositories;
+
+import francislagueu.task.models.Choice;
+import francislagueu.task.models.ChoiceVoteShard;
+import francislagueu.task.models.Poll;
+import francislagueu.task.models.User;
+import francislagueu.task.models.UserStats;
+import francislagueu.task.models.UserStatsCheck;
+import francislagueu.task.models.Vote;
+import francislagueu.task.payload.UserProfile;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+public class UserRepositoryTests {
+
+    private static final Instant START = Instant.parse("2019-04-01T00:00:00Z");
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserStatsRepository userStatsRepository;
+
+    private Statistics statistics;
+    private User creator;
+    private User voter;
+
+    @Before
+    public void setUp(){
+        statistics = entityManager.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        creator = persist(new User("Ada", "Lovelace", "ada@example.com", "password", "ada"));
+        voter = persist(new User("Alan", "Turing", "alan@example.com", "password", "alan"));
+
+        for(int i = 0; i < 2; i++){
+            Poll poll = new Poll();
+            poll.setQuestion("Question " + i);
+            poll.setExpirationDateTime(START.plusSeconds(3600));
+            poll.setCreatedAt(START);
+            poll.setUpdatedAt(START);
+            poll.setCreatedBy(creator.getId());
+            poll.addChoice(new Choice("Yes"));
+            poll.addChoice(new Choice("No"));
+            entityManager.persist(poll);
+
+            Vote vote = new Vote();
+            vote.setPoll(poll);
+            vote.setChoice(poll.getChoices().get(0));
+            vote.setUser(voter);
+            vote.setCreatedAt(START);
+            vote.setUpdatedAt(START);
+            entityManager.persist(vote);
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    public void backfillsMissingCountersOnce(){
+        assertNull(userRepository.findProfileByUsername("ada").get().getPollCount());
+
+        assertEquals(2, userStatsRepository.backfill(0L, voter.getId()));
+        assertEquals(0, userStatsRepository.backfill(0L, voter.getId()));
+
+        UserProfile creatorProfile = userRepository.findProfileByUsername("ada").get();
+        assertEquals(Long.valueOf(2), creatorProfile.getPollCount());
+        assertEquals(Long.valueOf(0), creatorProfile.getVoteCount());
+        assertEquals(Long.valueOf(2), creatorProfile.getVotesReceived());
+
+        UserProfile voterProfile = userRepository.findProfileByUsername("alan").get();
+        assertEquals(Long.valueOf(0), voterProfile.getPollCount());
+        assertEquals(Long.valueOf(2), voterProfile.getVoteCount());
+        assertEquals(Long.valueOf(0), voterProfile.getVotesReceived());
+    }
+
+    @Test
+    public void readsTheProfileWithItsCountersInOneStatement(){
+        entityManager.persist(new UserStats(voter.getId()));
+        entityManager.flush();
+        entityManager.clear();
+        assertEquals(1, userStatsRepository.incrementVoteCount(voter.getId()));
+        assertEquals(1, userStatsRepository.incrementPollCount(voter.getId()));
+        assertEquals(0, userStatsRepository.incrementPollCount(creator.getId()));
+
+        statistics.clear();
+        UserProfile profile = userRepository.findProfileByUsername("alan").get();
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(voter.getUuid(), profile.getId());
+        assertEquals(Long.valueOf(1), profile.getPollCount());
+        assertEquals(Long.valueOf(1), profile.getVoteCount());
+        assertEquals(Long.valueOf(0), profile.getVotesReceived());
+    }
+
+    @Test
+    public void findsAndRepairsDriftedCounters(){
+        UserStats stats = new UserStats(creator.getId());
+        stats.setPollCount(2);
+        stats.setVoteCount(1);
+        entityManager.persist(stats);
+        entityManager.persist(new UserStats(voter.getId()));
+        entityManager.flush();
+        entityManager.clear();
+        assertEquals(1, userStatsRepository.incrementVoteCount(voter.getId()));
+
+        List<UserStatsCheck> checks = userStatsRepository.checkAfter(0L, PageRequest.of(0, 10));
+        assertEquals(2, checks.size());
+        UserStatsCheck creatorCheck = checks.get(0);
+        assertEquals(creator.getId(), creatorCheck.getUserId());
+        assertEquals(0, creatorCheck.getPollCountDrift());
+        assertEquals(-1, creatorCheck.getVoteCountDrift());
+        UserStatsCheck voterCheck = checks.get(1);
+        assertEquals(1, voterCheck.getVoteCountDrift());
+
+        for(UserStatsCheck check : checks){
+            userStatsRepository.adjust(check.getUserId(), check.getPollCountDrift(), check.getVoteCountDrift());
+        }
+        assertFalse(userStatsRepository.checkAfter(0L, PageRequest.of(0, 10)).stream().anyMatch(UserStatsCheck::hasDrift));
+        assertEquals(1, userStatsRepository.checkAfter(creator.getId(), PageRequest.of(0, 10)).size());
+    }
+
+    @Test
+    public void foldsVotesReceivedFromTheVoteCountersOfTheCreatorsPolls(){
+        entityManager.persist(new UserStats(creator.getId()));
+        entityManager.persist(new UserStats(voter.getId()));
+        List<Choice> choices = entityManager.getEntityManager()
+                .createQuery("SELECT c FROM Choice c ORDER BY c.id", Choice.class).getResultList();
+        choices.get(0).setVoteCount(3);
+        choices.get(2).setVoteCount(1);
+        ChoiceVoteShard shard = new ChoiceVoteShard(choices.get(2).getPoll(), choices.get(2), 0);
+        shard.setVoteCount(2);
+        entityManager.persist(shard);
+        entityManager.flush();
+        entityManager.clear();
+
+        assertEquals(2, userStatsRepository.foldVotesReceived(Arrays.asList(creator.getId(), voter.getId())));
+
+        assertEquals(Long.valueOf(6), userRepository.findProfileByUsername("ada").get().getVotesReceived());
+        assertEquals(Long.valueOf(0), userRepository.findProfileByUsername("alan").get().getVotesReceived());
+    }
+
+    private User persist(User user){
+        user.setCreatedAt(START);
+        user.setUpdatedAt(START);
+        return entityManager.persist(user);
+    }
+}
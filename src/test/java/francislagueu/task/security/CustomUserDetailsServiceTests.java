@@ -0,0 +1,131 @@
+package francislagueu.task.security;
+
+import francislagueu.task.exception.ServiceUnavailableException;
+import francislagueu.task.models.Role;
+import francislagueu.task.models.RoleName;
+import francislagueu.task.models.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "app.userPrincipalCacheLoadTimeoutInMs=100"
+})
+@Import(CustomUserDetailsService.class)
+public class CustomUserDetailsServiceTests {
+
+    @TestConfiguration
+    static class Metrics {
+        @Bean
+        MeterRegistry meterRegistry(){
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private CustomUserDetailsService customUserDetailsService;
+
+    private Statistics statistics;
+    private Role userRole;
+    private User user;
+
+    @Before
+    public void setUp(){
+        statistics = entityManager.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        userRole = entityManager.persist(new Role(RoleName.ROLE_USER));
+        user = new User("Ada", "Lovelace", "ada@example.com", "password", "ada");
+        user.setRoles(new HashSet<>(Collections.singleton(userRole)));
+        user.setCreatedAt(Instant.now());
+        user.setUpdatedAt(Instant.now());
+        user = entityManager.persistFlushFind(user);
+        entityManager.clear();
+    }
+
+    @Test
+    public void loadsAPrincipalWithItsRolesInOneStatementAndThenFromTheCache(){
+        statistics.clear();
+        UserDetails principal = customUserDetailsService.loadUserByUuid(user.getUuid());
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(1, principal.getAuthorities().size());
+
+        assertSame(principal, customUserDetailsService.loadUserByUuid(user.getUuid()));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void dropsTheCachedPrincipalWhenTheUserChanges(){
+        UserDetails principal = customUserDetailsService.loadUserByUuid(user.getUuid());
+
+        User changed = entityManager.find(User.class, user.getId());
+        changed.setFirstName("Augusta");
+        entityManager.flush();
+
+        UserDetails reloaded = customUserDetailsService.loadUserByUuid(user.getUuid());
+        assertEquals("Augusta", ((UserPrincipal) reloaded).getFirstName());
+        assertEquals(principal.getUsername(), reloaded.getUsername());
+    }
+
+    @Test
+    public void dropsTheCachedPrincipalWhenRolesChange(){
+        Role adminRole = entityManager.persist(new Role(RoleName.ROLE_ADMIN));
+        customUserDetailsService.loadUserByUuid(user.getUuid());
+
+        User changed = entityManager.find(User.class, user.getId());
+        changed.getRoles().add(adminRole);
+        entityManager.flush();
+        entityManager.clear();
+
+        assertEquals(2, customUserDetailsService.loadUserByUuid(user.getUuid()).getAuthorities().size());
+    }
+
+    @Test
+    public void servesCachedPrincipalsWhileEveryLoadSlotIsTaken(){
+        UserDetails principal = customUserDetailsService.loadUserByUuid(user.getUuid());
+        User other = new User("Grace", "Hopper", "grace@example.com", "password", "grace");
+        other.setCreatedAt(Instant.now());
+        other.setUpdatedAt(Instant.now());
+        other = entityManager.persistFlushFind(other);
+
+        Semaphore loads = (Semaphore) ReflectionTestUtils.getField(customUserDetailsService, "loads");
+        int permits = loads.drainPermits();
+        try{
+            assertSame(principal, customUserDetailsService.loadUserByUuid(user.getUuid()));
+            try{
+                customUserDetailsService.loadUserByUuid(other.getUuid());
+                fail("Expected the load to give up waiting for a slot");
+            }catch (ServiceUnavailableException expected){
+            }
+        }finally {
+            loads.release(permits);
+        }
+        assertEquals("grace", customUserDetailsService.loadUserByUuid(other.getUuid()).getUsername());
+    }
+}
@@ -0,0 +1,82 @@
+package francislagueu.task.security;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class JwtTokenProviderTests {
+
+    private JwtTokenProvider tokenProvider;
+
+    @Before
+    public void setUp(){
+        tokenProvider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(tokenProvider, "jwtSecret", "secret");
+        ReflectionTestUtils.setField(tokenProvider, "jwtExpirationInMs", 60000);
+        ReflectionTestUtils.setField(tokenProvider, "cacheMaxTokens", 100L);
+        ReflectionTestUtils.setField(tokenProvider, "cacheTtlInMs", 60000L);
+        tokenProvider.init();
+    }
+
+    @Test
+    public void verifiesATokenOnceAndThenAnswersFromTheCache(){
+        String token = token("uuid-1");
+        VerifiedToken verified = tokenProvider.verifyToken(token);
+        assertEquals("uuid-1", verified.getSubject());
+        assertSame(verified, tokenProvider.verifyToken(token));
+    }
+
+    @Test
+    public void rejectsTamperedAndExpiredTokens(){
+        String token = token("uuid-1");
+        int i = token.length() - 10;
+        String tampered = token.substring(0, i) + (token.charAt(i) == 'A' ? 'B' : 'A') + token.substring(i + 1);
+        assertNull(tokenProvider.verifyToken(tampered));
+
+        ReflectionTestUtils.setField(tokenProvider, "jwtExpirationInMs", -1000);
+        String expired = token("uuid-2");
+        assertNull(tokenProvider.verifyToken(expired));
+        assertNull(tokenProvider.verifyToken(expired));
+    }
+
+    @Test
+    public void cachesTokensWithoutExpiry(){
+        String token = Jwts.builder().setSubject("uuid-1").signWith(SignatureAlgorithm.HS512, "secret").compact();
+        VerifiedToken verified = tokenProvider.verifyToken(token);
+        assertNull(verified.getExpiration());
+        assertSame(verified, tokenProvider.verifyToken(token));
+    }
+
+    @Test
+    public void carriesThePrincipalInSelfContainedTokens(){
+        assertNull(tokenProvider.verifyToken(token("uuid-1")).getPrincipal());
+
+        ReflectionTestUtils.setField(tokenProvider, "selfContained", true);
+        ReflectionTestUtils.setField(tokenProvider, "selfContainedExpirationInMs", 60000L);
+        UserPrincipal principal = tokenProvider.verifyToken(token("uuid-2")).getPrincipal();
+        assertEquals(Long.valueOf(1), principal.getId());
+        assertEquals("uuid-2", principal.getUuid());
+        assertEquals("user", principal.getUsername());
+        assertEquals("Last", principal.getLastName());
+        assertEquals(Collections.singletonList("ROLE_USER"), principal.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority).collect(Collectors.toList()));
+    }
+
+    private String token(String uuid){
+        UserPrincipal principal = new UserPrincipal(1L, uuid, "First", "Last", "user", "user@example.com", "password",
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
+        return tokenProvider.generateToken(new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+    }
+}
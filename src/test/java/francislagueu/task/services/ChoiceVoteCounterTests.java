@@ -0,0 +1,152 @@
+package francislagueu.task.services;
+
+import francislagueu.task.models.Choice;
+import francislagueu.task.models.Poll;
+import francislagueu.task.repositories.ChoiceRepository;
+import francislagueu.task.repositories.ChoiceVoteShardRepository;
+import francislagueu.task.repositories.PollRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "app.voteCounterShards=4",
+        "app.voteCounterShardingThresholdPerSecond=2",
+        "app.voteRateEvictIntervalInMs=60000"
+})
+@Import(ChoiceVoteCounter.class)
+// Votes commit on their own, as in the application, so sharding starts after each one
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ChoiceVoteCounterTests {
+
+    @Autowired
+    private ChoiceVoteCounter choiceVoteCounter;
+
+    @Autowired
+    private PollRepository pollRepository;
+
+    @Autowired
+    private ChoiceRepository choiceRepository;
+
+    @Autowired
+    private ChoiceVoteShardRepository choiceVoteShardRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Poll poll;
+
+    @Before
+    public void setUp(){
+        Poll poll = new Poll();
+        poll.setQuestion("Question");
+        poll.setExpirationDateTime(Instant.now().plus(Duration.ofDays(1)));
+        poll.setCreatedAt(Instant.now());
+        poll.setUpdatedAt(Instant.now());
+        poll.addChoice(new Choice("Yes"));
+        poll.addChoice(new Choice("No"));
+        this.poll = pollRepository.save(poll);
+    }
+
+    @After
+    public void tearDown(){
+        choiceVoteShardRepository.deleteAll();
+        pollRepository.deleteAll();
+    }
+
+    @Test
+    public void keepsASlowPollOnTheChoiceColumn(){
+        Choice yes = poll.getChoices().get(0);
+        choiceVoteCounter.increment(poll, yes);
+        choiceVoteCounter.increment(poll, yes);
+
+        Poll reloaded = reload();
+        assertEquals(0, reloaded.getCounterShards());
+        assertEquals(0, choiceVoteShardRepository.count());
+        assertEquals(Long.valueOf(2), choiceVoteCounter.getLiveChoiceVotesMap(Collections.singletonList(reloaded)).get(yes.getId()));
+    }
+
+    @Test
+    public void shardsAHotPollAndAddsItsShardsToTheChoiceColumn() throws InterruptedException {
+        Choice yes = poll.getChoices().get(0);
+        Choice no = poll.getChoices().get(1);
+        for(int i = 0; i < 5; i++){
+            choiceVoteCounter.increment(poll, yes);
+        }
+        Poll sharded = awaitSharding();
+        assertEquals(4, sharded.getCounterShards());
+        assertEquals(8, choiceVoteShardRepository.count());
+
+        for(int i = 0; i < 3; i++){
+            choiceVoteCounter.increment(sharded, yes);
+        }
+        choiceVoteCounter.increment(sharded, no);
+
+        assertEquals(5, choiceRepository.findById(yes.getId()).get().getVoteCount());
+        Map<Long, Long> choiceVotes = choiceVoteCounter.getLiveChoiceVotesMap(Collections.singletonList(reload()));
+        assertEquals(Long.valueOf(8), choiceVotes.get(yes.getId()));
+        assertEquals(Long.valueOf(1), choiceVotes.get(no.getId()));
+    }
+
+    @Test
+    public void readsLiveCountsByPollIdRatherThanFromLoadedChoices() throws InterruptedException {
+        Choice yes = poll.getChoices().get(0);
+        Poll loaded = reload();
+        for(int i = 0; i < 5; i++){
+            choiceVoteCounter.increment(poll, yes);
+        }
+        choiceVoteCounter.increment(awaitSharding(), yes);
+
+        assertEquals(0, loaded.getChoices().get(0).getVoteCount());
+        Map<Long, Long> choiceVotes = choiceVoteCounter.getLiveChoiceVotesMap(poll.getId());
+        assertEquals(Long.valueOf(6), choiceVotes.get(yes.getId()));
+        assertEquals(Long.valueOf(0), choiceVotes.get(poll.getChoices().get(1).getId()));
+    }
+
+    @Test
+    public void shardsOnlyOnceTheVoteTransactionCompletes() throws InterruptedException {
+        Choice yes = poll.getChoices().get(0);
+        new TransactionTemplate(transactionManager).execute(status -> {
+            for(int i = 0; i < 5; i++){
+                choiceVoteCounter.increment(poll, yes);
+            }
+            assertEquals(0, choiceVoteShardRepository.count());
+            return null;
+        });
+        assertEquals(4, awaitSharding().getCounterShards());
+    }
+
+    private Poll awaitSharding() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        Poll reloaded = reload();
+        while(!reloaded.isCounterSharded() && System.currentTimeMillis() < deadline){
+            Thread.sleep(20);
+            reloaded = reload();
+        }
+        assertTrue(reloaded.isCounterSharded());
+        return reloaded;
+    }
+
+    private Poll reload(){
+        return pollRepository.findById(poll.getId()).get();
+    }
+}
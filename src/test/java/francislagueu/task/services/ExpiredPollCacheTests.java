@@ -0,0 +1,32 @@
+package francislagueu.task.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+public class ExpiredPollCacheTests {
+
+    private static final byte[] JSON = "{\"id\":7,\"choices\":[{\"id\":12,\"voteCount\":3}],\"totalVotes\":3}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void rendersFrozenJsonAsIsWithoutSelectedChoice(){
+        ExpiredPollCache.FrozenPoll frozenPoll = new ExpiredPollCache.FrozenPoll(JSON, null);
+        assertSame(JSON, frozenPoll.render(null));
+    }
+
+    @Test
+    public void splicesSelectedChoiceIntoFrozenJson() throws Exception {
+        ExpiredPollCache.FrozenPoll frozenPoll = new ExpiredPollCache.FrozenPoll(JSON, null);
+        JsonNode rendered = new ObjectMapper().readTree(frozenPoll.render(12L));
+        assertEquals(12L, rendered.get("selectedChoice").asLong());
+        assertEquals(3L, rendered.get("totalVotes").asLong());
+        assertFalse(new ObjectMapper().readTree(JSON).has("selectedChoice"));
+    }
+}
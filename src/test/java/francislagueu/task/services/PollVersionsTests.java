@@ -0,0 +1,63 @@
+package francislagueu.task.services;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class PollVersionsTests {
+
+    private PollVersions pollVersions;
+
+    @Before
+    public void setUp(){
+        pollVersions = new PollVersions();
+        ReflectionTestUtils.setField(pollVersions, "maxPolls", 100L);
+        ReflectionTestUtils.setField(pollVersions, "maxStaleInMs", Long.MAX_VALUE);
+        pollVersions.init();
+    }
+
+    @Test
+    public void keepsETagsUntilAVoteIsCast(){
+        String pollETag = pollVersions.getPollETag(1L, 7L, false);
+        String feedETag = pollVersions.getFeedETag(7L);
+        assertEquals(pollETag, pollVersions.getPollETag(1L, 7L, false));
+        assertEquals(feedETag, pollVersions.getFeedETag(7L));
+
+        pollVersions.onVoteCast(new VoteCastEvent(1L, 10L));
+        assertNotEquals(pollETag, pollVersions.getPollETag(1L, 7L, false));
+        assertNotEquals(feedETag, pollVersions.getFeedETag(7L));
+    }
+
+    @Test
+    public void separatesViewersAndEncodings(){
+        String pollETag = pollVersions.getPollETag(1L, 7L, false);
+        assertNotEquals(pollETag, pollVersions.getPollETag(1L, 8L, false));
+        assertNotEquals(pollETag, pollVersions.getPollETag(1L, null, false));
+        assertNotEquals(pollETag, pollVersions.getPollETag(1L, 7L, true));
+    }
+
+    @Test
+    public void advancesWhenAPollExpires(){
+        pollVersions.onPollCreated(new PollCreatedEvent(1L, Instant.now()));
+        String pollETag = pollVersions.getPollETag(1L, null, false);
+        String otherETag = pollVersions.getPollETag(2L, null, false);
+        pollVersions.onPollExpired(1L);
+        assertNotEquals(pollETag, pollVersions.getPollETag(1L, null, false));
+        assertEquals(otherETag, pollVersions.getPollETag(2L, null, false));
+    }
+
+    @Test
+    public void expiresETagsThatCouldMissChangesFromOtherInstances() throws InterruptedException {
+        ReflectionTestUtils.setField(pollVersions, "maxStaleInMs", 10L);
+        String pollETag = pollVersions.getPollETag(1L, 7L, false);
+        String feedETag = pollVersions.getFeedETag(7L);
+        Thread.sleep(20);
+        assertNotEquals(pollETag, pollVersions.getPollETag(1L, 7L, false));
+        assertNotEquals(feedETag, pollVersions.getFeedETag(7L));
+    }
+}
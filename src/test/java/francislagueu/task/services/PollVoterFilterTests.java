@@ -0,0 +1,66 @@
+package francislagueu.task.services;
+
+import francislagueu.task.repositories.VoteRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+public class PollVoterFilterTests {
+
+    private VoteRepository voteRepository;
+    private PollVoterFilter pollVoterFilter;
+
+    @Before
+    public void setUp(){
+        voteRepository = mock(VoteRepository.class);
+        pollVoterFilter = new PollVoterFilter();
+        ReflectionTestUtils.setField(pollVoterFilter, "voteRepository", voteRepository);
+        ReflectionTestUtils.setField(pollVoterFilter, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(pollVoterFilter, "maxPolls", 100L);
+        ReflectionTestUtils.setField(pollVoterFilter, "idleInMs", 60000L);
+        ReflectionTestUtils.setField(pollVoterFilter, "falsePositiveRate", 0.01);
+        ReflectionTestUtils.setField(pollVoterFilter, "buildQueueCapacity", 4);
+        pollVoterFilter.init();
+
+        when(voteRepository.countByPollId(1L)).thenReturn(2L);
+        when(voteRepository.streamUserIdsByPollId(1L)).thenAnswer(invocation -> Stream.of(5L, 6L));
+    }
+
+    @After
+    public void tearDown(){
+        pollVoterFilter.stop();
+    }
+
+    @Test
+    public void answersMaybeUntilTheFilterIsBuiltInTheBackground() throws InterruptedException {
+        assertTrue(pollVoterFilter.mightHaveVoted(1L, 7L));
+        verify(voteRepository, timeout(5000)).streamUserIdsByPollId(1L);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while(pollVoterFilter.mightHaveVoted(1L, 7L) && System.currentTimeMillis() < deadline){
+            Thread.sleep(20);
+        }
+        assertFalse(pollVoterFilter.mightHaveVoted(1L, 7L));
+        assertTrue(pollVoterFilter.mightHaveVoted(1L, 5L));
+        verify(voteRepository, times(1)).streamUserIdsByPollId(1L);
+    }
+
+    @Test
+    public void addsRecordedVotesToABuiltFilter() throws InterruptedException {
+        pollVoterFilter.mightHaveVoted(1L, 7L);
+        long deadline = System.currentTimeMillis() + 5000;
+        while(pollVoterFilter.mightHaveVoted(1L, 7L) && System.currentTimeMillis() < deadline){
+            Thread.sleep(20);
+        }
+        pollVoterFilter.recordVote(1L, 7L);
+        assertTrue(pollVoterFilter.mightHaveVoted(1L, 7L));
+    }
+}
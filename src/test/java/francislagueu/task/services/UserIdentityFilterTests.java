@@ -0,0 +1,92 @@
+package francislagueu.task.services;
+
+import francislagueu.task.models.UserIdentity;
+import francislagueu.task.repositories.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class UserIdentityFilterTests {
+
+    private UserRepository userRepository;
+    private MeterRegistry meterRegistry;
+    private UserIdentityFilter userIdentityFilter;
+
+    @Before
+    public void setUp(){
+        userRepository = mock(UserRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        userIdentityFilter = new UserIdentityFilter();
+        ReflectionTestUtils.setField(userIdentityFilter, "userRepository", userRepository);
+        ReflectionTestUtils.setField(userIdentityFilter, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(userIdentityFilter, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(userIdentityFilter, "falsePositiveRate", 0.01);
+        ReflectionTestUtils.setField(userIdentityFilter, "maxAgeInMs", 3600000L);
+
+        when(userRepository.streamIdentities()).thenAnswer(invocation -> Stream.of(new UserIdentity("ada", "ada@example.com")));
+        when(userRepository.existsByUsername(anyString())).thenReturn(true);
+        when(userRepository.existsByEmail(anyString())).thenReturn(true);
+        userIdentityFilter.init();
+    }
+
+    @Test
+    public void answersDefinitelyAbsentNamesWithoutAQuery(){
+        assertFalse(userIdentityFilter.usernameExists("grace"));
+        assertFalse(userIdentityFilter.emailExists("grace@example.com"));
+        verify(userRepository, never()).existsByUsername(anyString());
+        verify(userRepository, never()).existsByEmail(anyString());
+
+        assertTrue(userIdentityFilter.usernameExists("ada"));
+        assertTrue(userIdentityFilter.emailExists("ada@example.com"));
+        verify(userRepository).existsByUsername("ada");
+        verify(userRepository).existsByEmail("ada@example.com");
+    }
+
+    @Test
+    public void keepsARegistrationMadeWhileARebuildStreams(){
+        when(userRepository.streamIdentities()).thenAnswer(invocation -> {
+            userIdentityFilter.recordRegistration("grace", "grace@example.com");
+            return Stream.of(new UserIdentity("ada", "ada@example.com"));
+        });
+        userIdentityFilter.rebuild();
+
+        assertTrue(userIdentityFilter.usernameExists("grace"));
+        assertTrue(userIdentityFilter.emailExists("grace@example.com"));
+        verify(userRepository).existsByUsername("grace");
+        verify(userRepository).existsByEmail("grace@example.com");
+    }
+
+    @Test
+    public void countsNamesTheFilterLetThroughThatAreNotTaken(){
+        when(userRepository.existsByUsername("ada")).thenReturn(false);
+
+        assertFalse(userIdentityFilter.usernameExists("ada"));
+        assertTrue(userIdentityFilter.emailExists("ada@example.com"));
+        assertEquals(1, meterRegistry.counter("users.identity.filter.queries", "filter", "username").count(), 0);
+        assertEquals(1, meterRegistry.counter("users.identity.filter.false.positives", "filter", "username").count(), 0);
+        assertEquals(1, meterRegistry.counter("users.identity.filter.queries", "filter", "email").count(), 0);
+        assertEquals(0, meterRegistry.counter("users.identity.filter.false.positives", "filter", "email").count(), 0);
+    }
+
+    @Test
+    public void asksTheDatabaseOnceTheFilterIsOverdue(){
+        ReflectionTestUtils.setField(userIdentityFilter, "maxAgeInMs", -1L);
+        when(userRepository.existsByUsername("grace")).thenReturn(true);
+
+        assertTrue(userIdentityFilter.usernameExists("grace"));
+        assertTrue(userIdentityFilter.emailExists("grace@example.com"));
+        verify(userRepository).existsByUsername("grace");
+        verify(userRepository).existsByEmail("grace@example.com");
+    }
+}
@@ -0,0 +1,235 @@
+package francislagueu.task.services;
+
+import francislagueu.task.exception.ServiceUnavailableException;
+import francislagueu.task.payload.VoteReceipt;
+import francislagueu.task.payload.VoteStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class VoteIngestionServiceTests {
+
+    private static final long OPEN_POLL = 1L;
+    private static final long CLOSED_POLL = 2L;
+    private static final long CHOICE = 10L;
+    private static final long CREATOR = 100L;
+
+    private FakeVotesTable votesTable;
+    private ChoiceVoteCounter choiceVoteCounter;
+    private VoteIngestionService voteIngestionService;
+
+    @Before
+    public void setUp(){
+        votesTable = new FakeVotesTable();
+        choiceVoteCounter = mock(ChoiceVoteCounter.class);
+        voteIngestionService = new VoteIngestionService();
+        ReflectionTestUtils.setField(voteIngestionService, "jdbcTemplate", votesTable);
+        ReflectionTestUtils.setField(voteIngestionService, "choiceVoteCounter", choiceVoteCounter);
+        ReflectionTestUtils.setField(voteIngestionService, "voteTallyCache", mock(VoteTallyCache.class));
+        ReflectionTestUtils.setField(voteIngestionService, "userStatsCounter", mock(UserStatsCounter.class));
+        ReflectionTestUtils.setField(voteIngestionService, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(voteIngestionService, "eventPublisher", mock(ApplicationEventPublisher.class));
+        ReflectionTestUtils.setField(voteIngestionService, "enabled", true);
+        ReflectionTestUtils.setField(voteIngestionService, "queueCapacity", 3);
+        ReflectionTestUtils.setField(voteIngestionService, "writers", 1);
+        ReflectionTestUtils.setField(voteIngestionService, "batchSize", 10);
+        ReflectionTestUtils.setField(voteIngestionService, "receiptRetentionInMs", 60000L);
+        ReflectionTestUtils.setField(voteIngestionService, "receiptMaxTickets", 100L);
+        voteIngestionService.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        votesTable.release.countDown();
+        voteIngestionService.stop();
+    }
+
+    @Test
+    public void writesTheVotesQueuedMeanwhileAsOneBatch() throws InterruptedException {
+        VoteReceipt first = submit(OPEN_POLL, 1L);
+        votesTable.awaitFirstBatch();
+        List<VoteReceipt> queued = Arrays.asList(submit(OPEN_POLL, 2L), submit(OPEN_POLL, 3L), submit(OPEN_POLL, 4L));
+        votesTable.release.countDown();
+
+        assertEquals(VoteStatus.ACCEPTED, awaitStatus(first));
+        for(VoteReceipt receipt : queued){
+            assertEquals(VoteStatus.ACCEPTED, awaitStatus(receipt));
+        }
+        assertEquals(Arrays.asList(1, 3), votesTable.batchSizes);
+        verify(choiceVoteCounter).add(CHOICE, 0, 1L);
+        verify(choiceVoteCounter).add(CHOICE, 0, 3L);
+    }
+
+    @Test
+    public void reportsARepeatedVoteAsDuplicateWithoutFailingItsBatch() throws InterruptedException {
+        submit(OPEN_POLL, 9L);
+        votesTable.awaitFirstBatch();
+        VoteReceipt vote = submit(OPEN_POLL, 1L);
+        VoteReceipt repeated = submit(OPEN_POLL, 1L);
+        VoteReceipt other = submit(OPEN_POLL, 2L);
+        votesTable.release.countDown();
+
+        assertEquals(VoteStatus.ACCEPTED, awaitStatus(vote));
+        assertEquals(VoteStatus.DUPLICATE, awaitStatus(repeated));
+        assertEquals(VoteStatus.ACCEPTED, awaitStatus(other));
+        assertEquals(Arrays.asList(1, 3), votesTable.batchSizes);
+        verify(choiceVoteCounter).add(CHOICE, 0, 2L);
+    }
+
+    @Test
+    public void rejectsVotesOnAPollClosedBeforeTheirBatch() throws InterruptedException {
+        votesTable.release.countDown();
+        VoteReceipt rejected = submit(CLOSED_POLL, 1L);
+
+        assertEquals(VoteStatus.REJECTED, awaitStatus(rejected));
+        verify(choiceVoteCounter, never()).add(anyLong(), anyInt(), anyLong());
+    }
+
+    @Test
+    public void refusesVotesWhenTheQueueIsFull() throws InterruptedException {
+        submit(OPEN_POLL, 1L);
+        votesTable.awaitFirstBatch();
+        submit(OPEN_POLL, 2L);
+        submit(OPEN_POLL, 3L);
+        submit(OPEN_POLL, 4L);
+        try{
+            submit(OPEN_POLL, 5L);
+            fail("Expected the full queue to refuse the vote");
+        }catch (ServiceUnavailableException expected){
+        }
+        votesTable.release.countDown();
+    }
+
+    @Test
+    public void writesEveryQueuedVoteBeforeStopping() throws InterruptedException {
+        List<VoteReceipt> receipts = new ArrayList<>();
+        receipts.add(submit(OPEN_POLL, 1L));
+        votesTable.awaitFirstBatch();
+        receipts.add(submit(OPEN_POLL, 2L));
+        receipts.add(submit(OPEN_POLL, 3L));
+
+        Thread stopping = new Thread(() -> {
+            try{
+                voteIngestionService.stop();
+            }catch (InterruptedException ex){
+                Thread.currentThread().interrupt();
+            }
+        });
+        stopping.start();
+        while(Boolean.TRUE.equals(ReflectionTestUtils.getField(voteIngestionService, "accepting"))){
+            Thread.sleep(5);
+        }
+        try{
+            submit(OPEN_POLL, 4L);
+            fail("Expected a stopping service to refuse the vote");
+        }catch (ServiceUnavailableException expected){
+        }
+        votesTable.release.countDown();
+        stopping.join(5000);
+
+        assertFalse(stopping.isAlive());
+        for(VoteReceipt receipt : receipts){
+            assertEquals(VoteStatus.ACCEPTED, voteIngestionService.getReceipt(receipt.getTicket()).getStatus());
+        }
+        verify(choiceVoteCounter).add(eq(CHOICE), eq(0), eq(2L));
+    }
+
+    private VoteReceipt submit(long pollId, long userId){
+        return voteIngestionService.submit(pollId, CHOICE, 0, CREATOR, userId);
+    }
+
+    private VoteStatus awaitStatus(VoteReceipt receipt) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        VoteStatus status = voteIngestionService.getReceipt(receipt.getTicket()).getStatus();
+        while(status == VoteStatus.PENDING && System.currentTimeMillis() < deadline){
+            Thread.sleep(5);
+            status = voteIngestionService.getReceipt(receipt.getTicket()).getStatus();
+        }
+        return status;
+    }
+
+    /**
+     * Stands in for the votes table on Postgres: a row is inserted unless its poll is closed or the same user
+     * already voted in it, which ON CONFLICT DO NOTHING reports as 0 rows. The first batch waits for
+     * {@link #release} so tests can queue votes behind it.
+     */
+    private static class FakeVotesTable extends JdbcTemplate {
+        private final CountDownLatch firstBatch = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        private final Set<List<Long>> votes = ConcurrentHashMap.newKeySet();
+        private final AtomicLong sequence = new AtomicLong();
+
+        void awaitFirstBatch() throws InterruptedException {
+            assertTrue(firstBatch.await(5, TimeUnit.SECONDS));
+        }
+
+        @Override
+        public int[] batchUpdate(String sql, BatchPreparedStatementSetter setter) {
+            assertTrue(sql.contains("NOT p.closed AND p.expiration_date_time >"));
+            assertTrue(sql.endsWith("ON CONFLICT (poll_id, user_id) DO NOTHING"));
+            firstBatch.countDown();
+            try{
+                release.await();
+            }catch (InterruptedException ex){
+                Thread.currentThread().interrupt();
+            }
+            int[] inserted = new int[setter.getBatchSize()];
+            for(int i = 0; i < inserted.length; i++){
+                Map<Integer, Long> parameters = new HashMap<>();
+                PreparedStatement statement = mock(PreparedStatement.class);
+                try{
+                    doAnswer(invocation -> parameters.put(invocation.getArgument(0), invocation.getArgument(1)))
+                            .when(statement).setLong(anyInt(), anyLong());
+                    setter.setValues(statement, i);
+                }catch (SQLException ex){
+                    throw new IllegalStateException(ex);
+                }
+                long pollId = parameters.get(6);
+                inserted[i] = pollId != CLOSED_POLL && votes.add(Arrays.asList(pollId, parameters.get(3))) ? 1 : 0;
+            }
+            batchSizes.add(inserted.length);
+            return inserted;
+        }
+
+        @Override
+        public <T> T queryForObject(String sql, Class<T> requiredType) {
+            return requiredType.cast(sequence.addAndGet(50));
+        }
+
+        @Override
+        public <T> T queryForObject(String sql, Class<T> requiredType, Object... args) {
+            return requiredType.cast(votes.contains(Arrays.asList((Long) args[0], (Long) args[1])) ? 1L : 0L);
+        }
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            return new int[batchArgs.size()];
+        }
+    }
+}
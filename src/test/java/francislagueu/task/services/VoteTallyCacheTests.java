@@ -0,0 +1,104 @@
+package francislagueu.task.services;
+
+import francislagueu.task.models.Poll;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class VoteTallyCacheTests {
+
+    private ChoiceVoteCounter choiceVoteCounter;
+    private VoteTallyCache voteTallyCache;
+    private Poll poll;
+
+    @Before
+    public void setUp(){
+        choiceVoteCounter = mock(ChoiceVoteCounter.class);
+        voteTallyCache = new VoteTallyCache();
+        ReflectionTestUtils.setField(voteTallyCache, "choiceVoteCounter", choiceVoteCounter);
+        ReflectionTestUtils.setField(voteTallyCache, "maxPolls", 100L);
+        ReflectionTestUtils.setField(voteTallyCache, "idleInMs", 60000L);
+        ReflectionTestUtils.setField(voteTallyCache, "ttlInMs", 60000L);
+        voteTallyCache.init();
+
+        poll = new Poll();
+        poll.setId(1L);
+        Map<Long, Long> counters = new HashMap<>();
+        counters.put(10L, 3L);
+        counters.put(11L, 1L);
+        when(choiceVoteCounter.getLiveChoiceVotesMap(1L)).thenAnswer(invocation -> new HashMap<>(counters));
+    }
+
+    @Test
+    public void loadsOnceAndIncrementsInPlace(){
+        voteTallyCache.getChoiceVotesMap(poll);
+        VoteTallyCache.VoteTally tally = voteTallyCache.getIfPresent(1L);
+        voteTallyCache.recordVote(1L, tally, 11L);
+        voteTallyCache.recordVote(1L, tally, 12L);
+
+        Map<Long, Long> choiceVotes = voteTallyCache.getChoiceVotesMap(poll);
+        assertEquals(Long.valueOf(3), choiceVotes.get(10L));
+        assertEquals(Long.valueOf(2), choiceVotes.get(11L));
+        assertEquals(Long.valueOf(1), choiceVotes.get(12L));
+        verify(choiceVoteCounter, times(1)).getLiveChoiceVotesMap(1L);
+    }
+
+    @Test
+    public void voteWithoutCachedTallyForcesReload(){
+        VoteTallyCache.VoteTally tally = voteTallyCache.getIfPresent(1L);
+        voteTallyCache.getChoiceVotesMap(poll);
+        voteTallyCache.recordVote(1L, tally, 10L);
+        voteTallyCache.getChoiceVotesMap(poll);
+
+        verify(choiceVoteCounter, times(2)).getLiveChoiceVotesMap(1L);
+    }
+
+    @Test
+    public void voteOnAReplacedTallyForcesReload(){
+        voteTallyCache.getChoiceVotesMap(poll);
+        VoteTallyCache.VoteTally tally = voteTallyCache.getIfPresent(1L);
+        voteTallyCache.evict(1L);
+        voteTallyCache.getChoiceVotesMap(poll);
+        voteTallyCache.recordVote(1L, tally, 10L);
+
+        assertEquals(Long.valueOf(3), voteTallyCache.getChoiceVotesMap(poll).get(10L));
+        verify(choiceVoteCounter, times(3)).getLiveChoiceVotesMap(1L);
+    }
+
+    @Test
+    public void appliesAVoteOnlyOnceItsTransactionCommits(){
+        voteTallyCache.getChoiceVotesMap(poll);
+        VoteTallyCache.VoteTally tally = voteTallyCache.getIfPresent(1L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try{
+            voteTallyCache.recordVote(1L, tally, 10L);
+            assertEquals(Long.valueOf(3), voteTallyCache.getChoiceVotesMap(poll).get(10L));
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        }finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertEquals(Long.valueOf(4), voteTallyCache.getChoiceVotesMap(poll).get(10L));
+    }
+
+    @Test
+    public void readsClosedPollsFromTheResultsSnapshot(){
+        poll.setClosed(true);
+        when(choiceVoteCounter.getChoiceVotesMap(any())).thenReturn(new HashMap<>(Collections.singletonMap(10L, 7L)));
+
+        assertEquals(Long.valueOf(7), voteTallyCache.getChoiceVotesMap(poll).get(10L));
+        assertNull(voteTallyCache.getIfPresent(1L));
+        verify(choiceVoteCounter, never()).getLiveChoiceVotesMap(anyLong());
+    }
+}
@@ -0,0 +1,62 @@
+package francislagueu.task.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BloomFilterTests {
+
+    @Test
+    public void neverForgetsAnInsertedValue(){
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for(int i = 0; i < 10000; i++){
+            filter.put("user-" + i);
+        }
+        for(int i = 0; i < 10000; i++){
+            assertTrue(filter.mightContain("user-" + i));
+        }
+        assertFalse(filter.isSaturated());
+    }
+
+    @Test
+    public void keepsFalsePositivesNearTheConfiguredRate(){
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for(int i = 0; i < 10000; i++){
+            filter.put("user-" + i);
+        }
+        int falsePositives = 0;
+        for(int i = 0; i < 100000; i++){
+            if(filter.mightContain("other-" + i)){
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < 2000);
+        assertTrue(filter.getExpectedFalsePositiveRate() < 0.02);
+    }
+
+    @Test
+    public void keepsFalsePositivesNearTheConfiguredRateForDenseKeys(){
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for(long userId = 1; userId <= 10000; userId++){
+            filter.put(userId);
+            assertTrue(filter.mightContain(userId));
+        }
+        int falsePositives = 0;
+        for(long userId = 10001; userId <= 110000; userId++){
+            if(filter.mightContain(userId)){
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < 2000);
+    }
+
+    @Test
+    public void reportsSaturationPastExpectedInsertions(){
+        BloomFilter filter = new BloomFilter(10, 0.01);
+        for(int i = 0; i < 11; i++){
+            filter.put("user-" + i);
+        }
+        assertTrue(filter.isSaturated());
+    }
+}
@@ -0,0 +1,29 @@
+package francislagueu.task.util;
+
+import francislagueu.task.exception.BadRequestException;
+import org.junit.Test;
+
+import java.time.Instant;
+
+import static org.junit.Assert.assertEquals;
+
+public class FeedCursorTests {
+
+    @Test
+    public void decodesWhatItEncoded(){
+        Instant createdAt = Instant.parse("2019-04-20T10:15:30.123456Z");
+        FeedCursor cursor = FeedCursor.decode(new FeedCursor(createdAt, 4242L).encode());
+        assertEquals(createdAt, cursor.getCreatedAt());
+        assertEquals(Long.valueOf(4242L), cursor.getId());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void rejectsMalformedTokens(){
+        FeedCursor.decode("not a cursor");
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void rejectsTokensOfTheWrongLength(){
+        FeedCursor.decode("AAAA");
+    }
+}
@@ -0,0 +1,68 @@
+package francislagueu.task.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HashedTimingWheelTests {
+
+    private HashedTimingWheel wheel;
+
+    @After
+    public void tearDown(){
+        wheel.close();
+    }
+
+    @Test
+    public void firesEachDeadlineOnceAndNeverEarly() throws InterruptedException {
+        Map<Long, Long> firedAt = new ConcurrentHashMap<>();
+        CountDownLatch fired = new CountDownLatch(3);
+        wheel = new HashedTimingWheel("test-wheel", 10, 4, id -> {
+            firedAt.merge(id, System.currentTimeMillis(), (first, again) -> -1L);
+            fired.countDown();
+        });
+
+        Instant now = Instant.now();
+        // 25 ms lands within the first turn of the wheel, 150 ms and 300 ms several turns later
+        long[] delays = {300, 25, 150};
+        for(long delay : delays){
+            wheel.schedule(delay, now.plusMillis(delay));
+        }
+        assertEquals(3, wheel.getPending());
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(0, wheel.getPending());
+        for(long delay : delays){
+            assertTrue("fired early or twice", firedAt.get(delay) >= now.toEpochMilli() + delay);
+        }
+    }
+
+    @Test
+    public void firesPastDeadlinesOnTheNextTick() throws InterruptedException {
+        List<Long> fired = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        wheel = new HashedTimingWheel("test-wheel", 10, 8, id -> {
+            fired.add(id);
+            done.countDown();
+        });
+
+        wheel.schedule(1, Instant.now().minusSeconds(3600));
+        wheel.schedule(2, Instant.EPOCH);
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(2, fired.size());
+        assertTrue(fired.containsAll(Arrays.asList(1L, 2L)));
+    }
+}